@@ -0,0 +1,103 @@
+package com.aaman.neo4j.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import com.aaman.neo4j.FullTextIndex;
+import com.aaman.neo4j.GraphAlgorithmsProc;
+import com.aaman.neo4j.JungNeo4JProc;
+
+/**
+ * An embedded database in a temporary directory with the plugin's procedures
+ * and functions registered, filled with generated movie data:
+ * <ul>
+ *     <li>{@code (:Person {id, name, born})}, whose names contain the word
+ *         {@code common}, every tenth also {@code tenth} and every thousandth
+ *         also {@code rare}, for searches with known hit counts</li>
+ *     <li>{@code (:Movie {id, title, released})}, one per ten people</li>
+ *     <li>{@code (:Person)-[:ACTED_IN {role}]->(:Movie)} for every person and
+ *         {@code (:Person)-[:DIRECTED]->(:Movie)} for every tenth</li>
+ * </ul>
+ */
+final class BenchmarkDatabase {
+
+    static final Label PERSON = Label.label("Person");
+    static final Label MOVIE = Label.label("Movie");
+    static final RelationshipType ACTED_IN = RelationshipType.withName("ACTED_IN");
+    static final RelationshipType DIRECTED = RelationshipType.withName("DIRECTED");
+
+    private static final int BATCH = 10000;
+
+    final GraphDatabaseService db;
+    /** Node ids of the people, by their {@code id}. */
+    final long[] people;
+    private final File directory;
+
+    private BenchmarkDatabase(File directory, GraphDatabaseService db, long[] people) {
+        this.directory = directory;
+        this.db = db;
+        this.people = people;
+    }
+
+    static BenchmarkDatabase start(int people) throws Exception {
+        File directory = Files.createTempDirectory("aaman-neo4j-bench").toFile();
+        GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase(directory);
+        Procedures procedures = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class);
+        procedures.registerProcedure(FullTextIndex.class);
+        procedures.registerProcedure(JungNeo4JProc.class);
+        procedures.registerFunction(JungNeo4JProc.class);
+        procedures.registerProcedure(GraphAlgorithmsProc.class);
+        return new BenchmarkDatabase(directory, db, generate(db, people));
+    }
+
+    private static long[] generate(GraphDatabaseService db, int count) {
+        int movieCount = Math.max(1, count / 10);
+        long[] movies = new long[movieCount];
+        for (int from = 0; from < movieCount; from += BATCH) {
+            try (Transaction tx = db.beginTx()) {
+                for (int i = from; i < Math.min(movieCount, from + BATCH); i++) {
+                    Node movie = db.createNode(MOVIE);
+                    movie.setProperty("id", i);
+                    movie.setProperty("title", "movie" + i);
+                    movie.setProperty("released", 1950 + i % 70);
+                    movies[i] = movie.getId();
+                }
+                tx.success();
+            }
+        }
+        long[] people = new long[count];
+        for (int from = 0; from < count; from += BATCH) {
+            try (Transaction tx = db.beginTx()) {
+                for (int i = from; i < Math.min(count, from + BATCH); i++) {
+                    Node person = db.createNode(PERSON);
+                    person.setProperty("id", i);
+                    person.setProperty("name", "person" + i + (i % 10 == 0 ? " tenth" : "") + (i % 1000 == 0 ? " rare" : "") + " common");
+                    person.setProperty("born", 1930 + i % 80);
+                    person.createRelationshipTo(db.getNodeById(movies[i % movieCount]), ACTED_IN).setProperty("role", "role" + i);
+                    if (i % 10 == 0) {
+                        person.createRelationshipTo(db.getNodeById(movies[(i / 10) % movieCount]), DIRECTED);
+                    }
+                    people[i] = person.getId();
+                }
+                tx.success();
+            }
+        }
+        return people;
+    }
+
+    void stop() throws IOException {
+        db.shutdown();
+        FileUtils.deleteDirectory(directory);
+    }
+}
@@ -0,0 +1,57 @@
+package com.aaman.neo4j.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code com.aaman.neo4j.CyphertoJSON} exporting every person, role and movie
+ * in the default chunks; each operation is one full export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CypherToJsonBenchmark {
+
+    @Param({"10000", "100000"})
+    public int people;
+
+    private BenchmarkDatabase data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = BenchmarkDatabase.start(people);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        data.stop();
+    }
+
+    @Benchmark
+    public long cyphertoJSON() {
+        long characters = 0;
+        try (Result result = data.db.execute("CALL com.aaman.neo4j.CyphertoJSON('MATCH (p:Person)-[r:ACTED_IN]->(m:Movie) RETURN p, r, m') YIELD value RETURN value")) {
+            while (result.hasNext()) {
+                characters += ((String) result.next().get("value")).length();
+            }
+        }
+        return characters;
+    }
+}
@@ -0,0 +1,85 @@
+package com.aaman.neo4j.bench;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Result;
+import org.neo4j.helpers.collection.MapUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code com.aaman.neo4j.search} for terms that hit a thousandth, a tenth and
+ * all of the people, and {@code com.aaman.neo4j.index} of one node per call.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FullTextIndexBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Indexed {
+        @Param({"100000"})
+        public int people;
+
+        BenchmarkDatabase data;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            data = BenchmarkDatabase.start(people);
+            data.db.execute("CALL com.aaman.neo4j.indexBatch('Person', ['name'], 10000)").close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            data.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Query {
+        @Param({"rare", "tenth", "common"})
+        public String term;
+
+        Map<String,Object> params;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            params = Collections.singletonMap("query", "name:" + term);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public long search(Indexed indexed, Query query) {
+        try (Result result = indexed.data.db.execute(
+                "CALL com.aaman.neo4j.search('Person', {query}) YIELD nodeId RETURN count(*) AS hits", query.params)) {
+            return (Long) result.next().get("hits");
+        }
+    }
+
+    @Benchmark
+    public void index(Indexed indexed, Cursor cursor) {
+        long[] people = indexed.data.people;
+        long nodeId = people[cursor.next++ % people.length];
+        indexed.data.db.execute("CALL com.aaman.neo4j.index({nodeId}, ['name'])", MapUtil.map("nodeId", nodeId)).close();
+    }
+}
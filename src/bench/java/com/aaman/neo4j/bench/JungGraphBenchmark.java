@@ -0,0 +1,62 @@
+package com.aaman.neo4j.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aaman.neo4j.JungGraph;
+
+/**
+ * {@link JungGraph#generateJSONGraph} and {@link JungGraph#generateSVGGraph}
+ * on the acted-in graph, loading, laying out and rendering it from scratch on
+ * every call, as they bypass the layout cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class JungGraphBenchmark {
+
+    private static final String QUERY = "MATCH p = (:Person)-[:ACTED_IN]->(:Movie) RETURN p";
+
+    @Param({"1000", "10000", "100000"})
+    public int people;
+
+    private BenchmarkDatabase data;
+    private final JungGraph graph = new JungGraph();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = BenchmarkDatabase.start(people);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        data.stop();
+    }
+
+    @Benchmark
+    public String generateJSONGraph() throws IOException {
+        return graph.generateJSONGraph(QUERY, data.db);
+    }
+
+    @Benchmark
+    public String generateSVGGraph() throws IOException {
+        return graph.generateSVGGraph(QUERY, data.db);
+    }
+}
@@ -0,0 +1,67 @@
+package com.aaman.neo4j.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code com.aaman.neo4j.getNodeProps} over lists of 10^3 to 10^6 nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NodePropsBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int inputs;
+
+    private BenchmarkDatabase data;
+    private Map<String,Object> params;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = BenchmarkDatabase.start(inputs);
+        List<Node> nodes = new ArrayList<>(inputs);
+        try (Transaction tx = data.db.beginTx()) {
+            for (long id : data.people) {
+                nodes.add(data.db.getNodeById(id));
+            }
+            tx.success();
+        }
+        params = Collections.singletonMap("nodes", nodes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        data.stop();
+    }
+
+    @Benchmark
+    public int getNodeProps() {
+        try (Result result = data.db.execute("CALL com.aaman.neo4j.getNodeProps({nodes}, 'name') YIELD value RETURN size(value) AS size", params)) {
+            return ((Number) result.next().get("size")).intValue();
+        }
+    }
+}
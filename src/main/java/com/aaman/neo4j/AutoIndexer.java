@@ -0,0 +1,245 @@
+package com.aaman.neo4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.logging.Log;
+
+/**
+ * Keeps the full-text indexes of configured labels up to date as nodes change.
+ *
+ * Committed transactions only record the ids of nodes whose configured labels
+ * changed, or whose properties indexed for one of their labels changed. A
+ * background task picks those ids up every {@link #FLUSH_INTERVAL_MILLIS} and
+ * reindexes each node once from its current state, so many updates to the same node between two flushes cost a single
+ * index write and the committing transactions pay no index I/O at all. Deleted
+ * nodes are the exception: they can't be read back later, so they are removed
+ * from the indexes while their transaction commits.
+ *
+ * There is one instance per database, the configuration lives in memory and has
+ * to be set up again after a restart.
+ */
+public class AutoIndexer implements TransactionEventHandler<Map<Long,Boolean>> {
+
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+    static final int FLUSH_BATCH_SIZE = 10000;
+
+    private static final PerDatabase<AutoIndexer> INSTANCES = new PerDatabase<>(AutoIndexer::shutdown);
+
+    private final GraphDatabaseService db;
+    private final Log log;
+    // label name -> property keys to index for that label
+    private final Map<String,String[]> config = new ConcurrentHashMap<>();
+    // node id -> whether a configured label was removed from it
+    private final Map<Long,Boolean> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(Pools.daemon("aaman-neo4j-autoindex"));
+
+    private AutoIndexer(GraphDatabaseService db, Log log) {
+        this.db = db;
+        this.log = log;
+    }
+
+    /**
+     * The indexer of {@code db}, registered with the database on first use.
+     */
+    public static AutoIndexer forDatabase(GraphDatabaseService db, Log log) {
+        return INSTANCES.get(db, database -> {
+            AutoIndexer indexer = new AutoIndexer(database, log);
+            database.registerTransactionEventHandler(indexer);
+            indexer.flusher.scheduleWithFixedDelay(indexer::flushSafely,
+                    FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            return indexer;
+        });
+    }
+
+    public void add(String label, String[] keys) {
+        config.put(label, keys);
+    }
+
+    public void remove(String label) {
+        config.remove(label);
+    }
+
+    public Map<String,String[]> config() {
+        return Collections.unmodifiableMap(config);
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Removes deleted nodes from the indexes and, while the new state of the
+     * changed nodes can still be read, picks those that need reindexing: nodes
+     * that gained or lost a configured label, and nodes with a configured label
+     * whose indexed properties changed. Node ids map to whether a configured
+     * label was removed.
+     */
+    @Override
+    public Map<Long,Boolean> beforeCommit(TransactionData data) {
+        if (config.isEmpty()) {
+            return null;
+        }
+        Map<Long,Boolean> changed = new HashMap<>();
+        // Deleted nodes report all their labels as removed
+        IndexRegistry indexes = IndexRegistry.forDatabase(db);
+        for (LabelEntry entry : data.removedLabels()) {
+            String label = entry.label().name();
+            if (!config.containsKey(label)) {
+                continue;
+            }
+            if (data.isDeleted(entry.node())) {
+                Index<Node> index = indexes.existing(label);
+                if (index != null) {
+                    index.remove(entry.node());
+                }
+            } else {
+                changed.put(entry.node().getId(), true);
+            }
+        }
+        for (LabelEntry entry : data.assignedLabels()) {
+            if (config.containsKey(entry.label().name())) {
+                changed.putIfAbsent(entry.node().getId(), false);
+            }
+        }
+        collect(data, data.assignedNodeProperties(), changed);
+        collect(data, data.removedNodeProperties(), changed);
+        return changed;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, Map<Long,Boolean> changed) {
+        if (changed != null) {
+            changed.forEach((id, unlabelled) -> pending.merge(id, unlabelled, Boolean::logicalOr));
+        }
+    }
+
+    private void collect(TransactionData data, Iterable<PropertyEntry<Node>> entries, Map<Long,Boolean> changed) {
+        for (PropertyEntry<Node> entry : entries) {
+            Node node = entry.entity();
+            if (!changed.containsKey(node.getId()) && !data.isDeleted(node) && isIndexed(node, entry.key())) {
+                changed.put(node.getId(), false);
+            }
+        }
+    }
+
+    // whether key is indexed for one of the node's labels
+    private boolean isIndexed(Node node, String key) {
+        for (Map.Entry<String,String[]> entry : config.entrySet()) {
+            for (String indexed : entry.getValue()) {
+                if (indexed.equals(key) && node.hasLabel(Label.label(entry.getKey()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Map<Long,Boolean> changed) {
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // keep the schedule alive
+            log.error("Failed to update full-text indexes", e);
+        }
+    }
+
+    /**
+     * Reindexes every pending node from its current state, in transactions of
+     * {@link #FLUSH_BATCH_SIZE} nodes. If a batch fails its nodes are tried again
+     * one per transaction, and a node failing on its own is logged and dropped
+     * rather than retried forever.
+     */
+    void flush() {
+        while (!pending.isEmpty()) {
+            long[] ids = new long[Math.min(pending.size(), FLUSH_BATCH_SIZE)];
+            boolean[] unlabelled = new boolean[ids.length];
+            int count = 0;
+            for (Iterator<Long> it = pending.keySet().iterator(); it.hasNext() && count < ids.length; ) {
+                Long id = it.next();
+                // the removed value includes anything afterCommit merged in meanwhile
+                Boolean removed = pending.remove(id);
+                if (removed != null) {
+                    ids[count] = id;
+                    unlabelled[count++] = removed;
+                }
+            }
+            try (Transaction tx = db.beginTx()) {
+                for (int i = 0; i < count; i++) {
+                    reindex(ids[i], unlabelled[i]);
+                }
+                tx.success();
+            } catch (RuntimeException e) {
+                for (int i = 0; i < count; i++) {
+                    reindexAlone(ids[i], unlabelled[i]);
+                }
+            }
+        }
+    }
+
+    private void reindexAlone(long id, boolean unlabelled) {
+        try (Transaction tx = db.beginTx()) {
+            reindex(id, unlabelled);
+            tx.success();
+        } catch (RuntimeException e) {
+            log.error("Failed to update the full-text indexes of node " + id + ", dropping it", e);
+        }
+    }
+
+    private void reindex(long id, boolean unlabelled) {
+        Node node;
+        try {
+            node = db.getNodeById(id);
+        } catch (NotFoundException e) {
+            // deleted after the change was recorded, beforeCommit removed it
+            return;
+        }
+        IndexRegistry indexes = IndexRegistry.forDatabase(db);
+        for (Map.Entry<String,String[]> entry : config.entrySet()) {
+            Label label = Label.label(entry.getKey());
+            if (node.hasLabel(label)) {
+                FullTextIndex.indexNode(node, Collections.singletonList(label), entry.getValue(), indexes);
+            } else if (unlabelled) {
+                // a configured label was removed, possibly this one
+                Index<Node> index = indexes.existing(label.name());
+                if (index != null) {
+                    index.remove(node);
+                }
+            }
+        }
+    }
+
+    private void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Pending full-text index updates were lost on shutdown", e);
+        }
+        db.unregisterTransactionEventHandler(this);
+    }
+}
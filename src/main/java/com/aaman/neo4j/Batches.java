@@ -0,0 +1,96 @@
+package com.aaman.neo4j;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Applies work to a range of node ids in fixed-size transactions.
+ *
+ * Every batch is committed on its own, so the transaction state never grows
+ * beyond {@code batchSize} nodes. The calling thread must not already be bound
+ * to a transaction, otherwise {@link GraphDatabaseService#beginTx()} would hand
+ * out a nested placebo and nothing would be committed until the outer
+ * transaction finishes - run it on {@link Pools#WORKERS} from a procedure.
+ */
+public final class Batches {
+
+    /** Work applied to a single node inside a batch transaction. */
+    @FunctionalInterface
+    public interface NodeTask {
+        /**
+         * @param node the node to update
+         * @param index the position of the node id in the id array
+         * @return the number of writes made for this node
+         */
+        long apply(Node node, int index);
+    }
+
+    /** Counters for a run over one or more id ranges. */
+    public static class Stats {
+        public long nodes;
+        public long skipped;
+        public long writes;
+        public long batches;
+
+        public synchronized void add(Stats other) {
+            nodes += other.nodes;
+            skipped += other.skipped;
+            writes += other.writes;
+            batches += other.batches;
+        }
+    }
+
+    private static final BooleanSupplier NEVER = () -> false;
+    private static final LongConsumer IGNORE = done -> {};
+
+    private Batches() {
+    }
+
+    public static Stats forEachNode(GraphDatabaseService db, long[] ids, int batchSize, NodeTask task) {
+        return forEachNode(db, ids, 0, ids.length, batchSize, task, NEVER, IGNORE);
+    }
+
+    /**
+     * @param from first index in {@code ids}, inclusive
+     * @param to last index in {@code ids}, exclusive
+     * @param cancelled checked before every batch, stops the run when it returns true
+     * @param onCommit receives the number of nodes in every committed batch
+     */
+    public static Stats forEachNode(GraphDatabaseService db, long[] ids, int from, int to, int batchSize,
+                                    NodeTask task, BooleanSupplier cancelled, LongConsumer onCommit) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive, got " + batchSize);
+        }
+        Stats stats = new Stats();
+        for (int start = from; start < to && !cancelled.getAsBoolean(); start += batchSize) {
+            int end = Math.min(to, start + batchSize);
+            long writes = 0;
+            long skipped = 0;
+            try (Transaction tx = db.beginTx()) {
+                for (int i = start; i < end; i++) {
+                    Node node;
+                    try {
+                        node = db.getNodeById(ids[i]);
+                    } catch (NotFoundException e) {
+                        // deleted since the ids were collected
+                        skipped++;
+                        continue;
+                    }
+                    writes += task.apply(node, i);
+                }
+                tx.success();
+            }
+            stats.nodes += end - start - skipped;
+            stats.skipped += skipped;
+            stats.writes += writes;
+            stats.batches++;
+            onCommit.accept(end - start);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,417 @@
+package com.aaman.neo4j;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+
+/**
+ * Community detection over a {@link CsrGraph}, ignoring relationship directions,
+ * and collapsing of a graph into one vertex per community.
+ *
+ * Both algorithms return, for every vertex, the member of its community with
+ * the lowest node id, so communities are named like the components of
+ * {@link GraphAlgorithms#connectedComponents}.
+ */
+final class Communities {
+
+    static final String LOUVAIN = "louvain";
+    static final String LABEL_PROPAGATION = "labelPropagation";
+
+    private static final long SEED = 0x5DEECE66DL;
+
+    private Communities() {
+    }
+
+    /**
+     * Runs {@code algorithm} with at most {@code iterations} sweeps over the
+     * vertices, per level for Louvain. Label propagation splits every sweep
+     * across {@code threads}; Louvain runs on the calling thread.
+     */
+    static int[] detect(CsrGraph graph, String algorithm, int iterations, int threads) {
+        switch (algorithm) {
+            case LOUVAIN:
+                return louvain(graph, iterations);
+            case LABEL_PROPAGATION:
+                return labelPropagation(graph, iterations, threads);
+            default:
+                throw new IllegalArgumentException("Unknown community algorithm '" + algorithm
+                        + "', expected " + LOUVAIN + " or " + LABEL_PROPAGATION);
+        }
+    }
+
+    /**
+     * Label propagation: every vertex starts with its own label and repeatedly
+     * takes the label most common among its neighbours, keeping its own if that
+     * is one of them and otherwise picking one of the tied labels at random.
+     * Updates are asynchronous and in place: with synchronous sweeps the hub and
+     * the leaves of a star, or the two sides of any bipartite graph, swap labels
+     * forever. Every sweep shuffles the vertices and splits them into ranges, one
+     * per thread, that update the shared labels concurrently; a vertex reads
+     * whatever its neighbours hold at that moment. On one thread a fixed seed
+     * makes the result repeatable, on more it may vary with the interleaving.
+     * Stops once a sweep changes nothing.
+     */
+    static int[] labelPropagation(CsrGraph graph, int iterations, int threads) {
+        int n = graph.vertexCount();
+        int[] labels = new int[n];
+        int[] order = new int[n];
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            labels[v] = v;
+            order[v] = v;
+            maxDegree = Math.max(maxDegree, LayoutSeed.degree(graph, v));
+        }
+        SplittableRandom random = new SplittableRandom(SEED);
+        int bufferSize = maxDegree;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            long seed = random.nextLong();
+            LongAdder changed = new LongAdder();
+            Pools.parallelFor(n, threads, (from, to) -> {
+                SplittableRandom ties = new SplittableRandom(seed + from);
+                int[] neighbours = new int[bufferSize];
+                int[] tied = new int[bufferSize];
+                for (int at = from; at < to; at++) {
+                    int v = order[at];
+                    int count = 0;
+                    for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                        neighbours[count++] = labels[graph.target(e)];
+                    }
+                    for (int j = graph.inStart(v); j < graph.inEnd(v); j++) {
+                        neighbours[count++] = labels[graph.source(graph.inEdge(j))];
+                    }
+                    if (count == 0) {
+                        continue;
+                    }
+                    Arrays.sort(neighbours, 0, count);
+                    int own = labels[v];
+                    int ownVotes = 0;
+                    int bestVotes = 0;
+                    int tiedCount = 0;
+                    for (int i = 0; i < count; ) {
+                        int label = neighbours[i];
+                        int end = i;
+                        while (end < count && neighbours[end] == label) {
+                            end++;
+                        }
+                        int votes = end - i;
+                        if (label == own) {
+                            ownVotes = votes;
+                        }
+                        if (votes > bestVotes) {
+                            bestVotes = votes;
+                            tiedCount = 0;
+                        }
+                        if (votes == bestVotes) {
+                            tied[tiedCount++] = label;
+                        }
+                        i = end;
+                    }
+                    if (ownVotes < bestVotes) {
+                        labels[v] = tied[ties.nextInt(tiedCount)];
+                        changed.increment();
+                    }
+                }
+            });
+            if (changed.sum() == 0) {
+                break;
+            }
+        }
+        return GraphAlgorithms.lowestNodeIds(graph, labels);
+    }
+
+    /**
+     * Louvain modularity optimisation: vertices move to the neighbouring community
+     * with the largest modularity gain until a sweep moves none, then every
+     * community becomes a vertex of a smaller weighted graph and the same is done
+     * there, until no level improves. Each relationship weighs 1. Moving vertices
+     * one at a time against the latest state is what makes the method converge,
+     * so it runs on the calling thread.
+     */
+    static int[] louvain(CsrGraph graph, int passes) {
+        int n = graph.vertexCount();
+        int[] assignment = new int[n];
+        for (int v = 0; v < n; v++) {
+            assignment[v] = v;
+        }
+        Level level = Level.of(graph);
+        while (true) {
+            int[] community = level.moveVertices(passes);
+            if (community == null) {
+                break;
+            }
+            int count = renumber(community);
+            if (count == level.n) {
+                break;
+            }
+            for (int v = 0; v < n; v++) {
+                assignment[v] = community[assignment[v]];
+            }
+            level = level.aggregate(community, count);
+        }
+        return GraphAlgorithms.lowestNodeIds(graph, assignment);
+    }
+
+    // renumbers community ids to 0..count-1 in place and returns count
+    private static int renumber(int[] community) {
+        int[] ids = new int[community.length];
+        Arrays.fill(ids, -1);
+        int count = 0;
+        for (int v = 0; v < community.length; v++) {
+            int c = community[v];
+            if (ids[c] == -1) {
+                ids[c] = count++;
+            }
+            community[v] = ids[c];
+        }
+        return count;
+    }
+
+    /**
+     * An undirected weighted graph for one level of Louvain. Every edge is listed
+     * at both ends, a self loop once, as in the reference implementation.
+     */
+    private static final class Level {
+        final int n;
+        final int[] offsets;
+        final int[] neighbours;
+        final double[] weights;
+
+        Level(int n, int[] offsets, int[] neighbours, double[] weights) {
+            this.n = n;
+            this.offsets = offsets;
+            this.neighbours = neighbours;
+            this.weights = weights;
+        }
+
+        static Level of(CsrGraph graph) {
+            int n = graph.vertexCount();
+            int[] offsets = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                int degree = LayoutSeed.degree(graph, v);
+                for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                    if (graph.target(e) == v) {
+                        // listed as out- and in-edge, kept once
+                        degree--;
+                    }
+                }
+                offsets[v + 1] = offsets[v] + degree;
+            }
+            int[] neighbours = new int[offsets[n]];
+            double[] weights = new double[offsets[n]];
+            Arrays.fill(weights, 1);
+            for (int v = 0; v < n; v++) {
+                int at = offsets[v];
+                for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                    neighbours[at++] = graph.target(e);
+                }
+                for (int j = graph.inStart(v); j < graph.inEnd(v); j++) {
+                    int u = graph.source(graph.inEdge(j));
+                    if (u != v) {
+                        neighbours[at++] = u;
+                    }
+                }
+            }
+            return new Level(n, offsets, neighbours, weights);
+        }
+
+        /**
+         * @return the community of every vertex, or {@code null} if no vertex moved
+         */
+        int[] moveVertices(int passes) {
+            double[] degree = new double[n];
+            double total = 0;
+            for (int v = 0; v < n; v++) {
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    degree[v] += weights[i];
+                }
+                total += degree[v];
+            }
+            if (total == 0) {
+                return null;
+            }
+            int[] community = new int[n];
+            double[] communityDegree = degree.clone();
+            for (int v = 0; v < n; v++) {
+                community[v] = v;
+            }
+            double[] linkWeight = new double[n];
+            Arrays.fill(linkWeight, -1);
+            int[] linked = new int[n];
+            boolean moved = false;
+            for (int pass = 0; pass < passes; pass++) {
+                int moves = 0;
+                for (int v = 0; v < n; v++) {
+                    int own = community[v];
+                    int count = 0;
+                    linkWeight[own] = 0;
+                    linked[count++] = own;
+                    for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                        int u = neighbours[i];
+                        if (u == v) {
+                            continue;
+                        }
+                        int c = community[u];
+                        if (linkWeight[c] < 0) {
+                            linkWeight[c] = 0;
+                            linked[count++] = c;
+                        }
+                        linkWeight[c] += weights[i];
+                    }
+                    communityDegree[own] -= degree[v];
+                    // gain of joining c, up to terms that are the same for every c
+                    int best = own;
+                    double bestGain = linkWeight[own] - communityDegree[own] * degree[v] / total;
+                    for (int i = 1; i < count; i++) {
+                        int c = linked[i];
+                        double gain = linkWeight[c] - communityDegree[c] * degree[v] / total;
+                        if (gain > bestGain) {
+                            best = c;
+                            bestGain = gain;
+                        }
+                    }
+                    communityDegree[best] += degree[v];
+                    community[v] = best;
+                    if (best != own) {
+                        moves++;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        linkWeight[linked[i]] = -1;
+                    }
+                }
+                if (moves == 0) {
+                    break;
+                }
+                moved = true;
+            }
+            return moved ? community : null;
+        }
+
+        /** The graph with one vertex per community and the summed weights between them. */
+        Level aggregate(int[] community, int count) {
+            int[] memberOffsets = new int[count + 1];
+            for (int v = 0; v < n; v++) {
+                memberOffsets[community[v] + 1]++;
+            }
+            for (int c = 0; c < count; c++) {
+                memberOffsets[c + 1] += memberOffsets[c];
+            }
+            int[] members = new int[n];
+            int[] next = Arrays.copyOf(memberOffsets, count);
+            for (int v = 0; v < n; v++) {
+                members[next[community[v]]++] = v;
+            }
+
+            int[] offsets = new int[count + 1];
+            int[] neighbours = new int[16];
+            double[] weights = new double[16];
+            double[] linkWeight = new double[count];
+            Arrays.fill(linkWeight, -1);
+            int[] linked = new int[count];
+            int size = 0;
+            for (int c = 0; c < count; c++) {
+                int linkedCount = 0;
+                for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                    int v = members[m];
+                    for (int i = this.offsets[v]; i < this.offsets[v + 1]; i++) {
+                        int d = community[this.neighbours[i]];
+                        if (linkWeight[d] < 0) {
+                            linkWeight[d] = 0;
+                            linked[linkedCount++] = d;
+                        }
+                        linkWeight[d] += this.weights[i];
+                    }
+                }
+                if (size + linkedCount > neighbours.length) {
+                    int capacity = Math.max(neighbours.length * 2, size + linkedCount);
+                    neighbours = Arrays.copyOf(neighbours, capacity);
+                    weights = Arrays.copyOf(weights, capacity);
+                }
+                for (int i = 0; i < linkedCount; i++) {
+                    neighbours[size] = linked[i];
+                    weights[size++] = linkWeight[linked[i]];
+                    linkWeight[linked[i]] = -1;
+                }
+                offsets[c + 1] = size;
+            }
+            return new Level(count, offsets, neighbours, weights);
+        }
+    }
+
+    /**
+     * Collapses {@code graph} into one vertex per community, standing for the
+     * community's member with the lowest node id, and one edge per pair of communities and
+     * relationship type, standing for its first relationship. Vertex and edge
+     * weights count what was merged. Relationships inside a community are dropped.
+     *
+     * @param community for every vertex, the member of its community that stands for it
+     */
+    static CsrGraph collapse(CsrGraph graph, int[] community) {
+        int n = graph.vertexCount();
+        int[] index = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            if (community[v] == v) {
+                index[v] = count++;
+            }
+        }
+        long[] nodeIds = new long[count];
+        int[] sizes = new int[count];
+        PrimitiveLongIntMap vertices = Primitive.longIntMap(count);
+        for (int v = 0; v < n; v++) {
+            int c = index[community[v]];
+            if (community[v] == v) {
+                nodeIds[c] = graph.nodeId(v);
+                vertices.put(nodeIds[c], c);
+            }
+            sizes[c]++;
+        }
+
+        int typeCount = Math.max(1, graph.typeNames().length);
+        PrimitiveLongIntMap merged = Primitive.longIntMap();
+        int[] sources = new int[16];
+        int[] targets = new int[16];
+        long[] relIds = new long[16];
+        int[] types = new int[16];
+        int[] counts = new int[16];
+        int edgeCount = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            int source = index[community[graph.source(e)]];
+            int target = index[community[graph.target(e)]];
+            if (source == target) {
+                continue;
+            }
+            long key = ((long) source * count + target) * typeCount + graph.typeIndex(e);
+            int at = merged.get(key);
+            if (at != -1) {
+                counts[at]++;
+                continue;
+            }
+            if (edgeCount == sources.length) {
+                int capacity = edgeCount * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                relIds = Arrays.copyOf(relIds, capacity);
+                types = Arrays.copyOf(types, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            merged.put(key, edgeCount);
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            relIds[edgeCount] = graph.relationshipId(e);
+            types[edgeCount] = graph.typeIndex(e);
+            counts[edgeCount] = 1;
+            edgeCount++;
+        }
+        return new CsrGraph(nodeIds, count, vertices, sources, targets, relIds, types, edgeCount,
+                graph.typeNames(), sizes, counts);
+    }
+}
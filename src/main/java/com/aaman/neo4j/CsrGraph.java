@@ -0,0 +1,414 @@
+package com.aaman.neo4j;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+
+import edu.uci.ics.jung.graph.AbstractTypedGraph;
+import edu.uci.ics.jung.graph.DirectedGraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A read-only directed graph in compressed sparse row form.
+ *
+ * Vertices are the ints 0..n-1 and edges the ints 0..m-1. Edges are sorted by
+ * source, so the out-edges of vertex v are the edge range
+ * {@code [outStart(v), outEnd(v))}; in-edges are listed per target through a
+ * second offset array. Side tables map vertices to node ids and edges to
+ * relationship ids and types. That is about 16 bytes per vertex and 20 per edge,
+ * against hundreds of bytes per vertex for the hash maps of
+ * {@code DirectedSparseGraph}.
+ *
+ * The graph also implements JUNG's {@link edu.uci.ics.jung.graph.Graph} with
+ * {@code Integer} vertices and edges, backed by views over the arrays, so JUNG
+ * layouts and algorithms run on it as is. Code that needs to be fast should use
+ * the primitive accessors instead.
+ */
+public class CsrGraph extends AbstractTypedGraph<Integer,Integer> implements DirectedGraph<Integer,Integer> {
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final long[] nodeIds;
+    private final PrimitiveLongIntMap vertices;
+    private final int[] outOffsets;
+    private final int[] sources;
+    private final int[] targets;
+    private final long[] relIds;
+    private final int[] types;
+    private final String[] typeNames;
+    private final int[] inOffsets;
+    private final int[] inEdges;
+    // null unless the graph was collapsed, see Communities#collapse
+    private final int[] vertexWeights;
+    private final int[] edgeWeights;
+
+    /**
+     * Builds the graph from edges in any order.
+     *
+     * @param nodeIds node id per vertex, the first {@code vertexCount} are used
+     * @param vertices node id to vertex
+     * @param sources source vertex per edge, the first {@code edgeCount} are used
+     * @param targets target vertex per edge
+     * @param relIds relationship id per edge
+     * @param types index into {@code typeNames} per edge
+     */
+    CsrGraph(long[] nodeIds, int vertexCount, PrimitiveLongIntMap vertices,
+             int[] sources, int[] targets, long[] relIds, int[] types, int edgeCount, String[] typeNames) {
+        this(nodeIds, vertexCount, vertices, sources, targets, relIds, types, edgeCount, typeNames, null, null);
+    }
+
+    /**
+     * Builds a graph whose vertices and edges each stand for several nodes and
+     * relationships.
+     *
+     * @param vertexWeights number of nodes per vertex
+     * @param edgeWeights number of relationships per edge, in the order of {@code sources}
+     */
+    CsrGraph(long[] nodeIds, int vertexCount, PrimitiveLongIntMap vertices,
+             int[] sources, int[] targets, long[] relIds, int[] types, int edgeCount, String[] typeNames,
+             int[] vertexWeights, int[] edgeWeights) {
+        super(EdgeType.DIRECTED);
+        this.vertexWeights = vertexWeights;
+        this.edgeWeights = edgeWeights == null ? null : new int[edgeCount];
+        this.vertexCount = vertexCount;
+        this.edgeCount = edgeCount;
+        this.nodeIds = nodeIds.length == vertexCount ? nodeIds : Arrays.copyOf(nodeIds, vertexCount);
+        this.vertices = vertices;
+        this.typeNames = typeNames;
+
+        // counting sort of the edges by source
+        this.outOffsets = offsets(sources, edgeCount, vertexCount);
+        this.sources = new int[edgeCount];
+        this.targets = new int[edgeCount];
+        this.relIds = new long[edgeCount];
+        this.types = new int[edgeCount];
+        int[] next = Arrays.copyOf(outOffsets, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int at = next[sources[e]]++;
+            this.sources[at] = sources[e];
+            this.targets[at] = targets[e];
+            this.relIds[at] = relIds[e];
+            this.types[at] = types[e];
+            if (edgeWeights != null) {
+                this.edgeWeights[at] = edgeWeights[e];
+            }
+        }
+
+        // and of the sorted edges by target
+        this.inOffsets = offsets(this.targets, edgeCount, vertexCount);
+        this.inEdges = new int[edgeCount];
+        next = Arrays.copyOf(inOffsets, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            inEdges[next[this.targets[e]]++] = e;
+        }
+    }
+
+    private static int[] offsets(int[] vertexPerEdge, int edgeCount, int vertexCount) {
+        int[] offsets = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[vertexPerEdge[e] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        return offsets;
+    }
+
+    // Primitive accessors
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public long nodeId(int vertex) {
+        return nodeIds[vertex];
+    }
+
+    /**
+     * @return the vertex of the node, or -1 if the node is not in the graph
+     */
+    public int vertexOf(long nodeId) {
+        return vertices.get(nodeId);
+    }
+
+    public long relationshipId(int edge) {
+        return relIds[edge];
+    }
+
+    public String type(int edge) {
+        return typeNames[types[edge]];
+    }
+
+    int typeIndex(int edge) {
+        return types[edge];
+    }
+
+    public String[] typeNames() {
+        return typeNames.clone();
+    }
+
+    public int source(int edge) {
+        return sources[edge];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /** First out-edge of {@code vertex}. */
+    public int outStart(int vertex) {
+        return outOffsets[vertex];
+    }
+
+    /** One past the last out-edge of {@code vertex}. */
+    public int outEnd(int vertex) {
+        return outOffsets[vertex + 1];
+    }
+
+    /** First position of {@code vertex} in the in-edge list, see {@link #inEdge(int)}. */
+    public int inStart(int vertex) {
+        return inOffsets[vertex];
+    }
+
+    /** One past the last position of {@code vertex} in the in-edge list. */
+    public int inEnd(int vertex) {
+        return inOffsets[vertex + 1];
+    }
+
+    /** The edge at {@code position} of the in-edge list. */
+    public int inEdge(int position) {
+        return inEdges[position];
+    }
+
+    /**
+     * @return whether vertices and edges stand for groups of nodes and relationships
+     */
+    public boolean isCollapsed() {
+        return vertexWeights != null;
+    }
+
+    /**
+     * @return the number of nodes {@code vertex} stands for, 1 unless the graph is collapsed
+     */
+    public int vertexWeight(int vertex) {
+        return vertexWeights == null ? 1 : vertexWeights[vertex];
+    }
+
+    /**
+     * @return the number of relationships {@code edge} stands for, 1 unless the graph is collapsed
+     */
+    public int edgeWeight(int edge) {
+        return edgeWeights == null ? 1 : edgeWeights[edge];
+    }
+
+    /**
+     * Approximate heap taken by the arrays and the node id map, used to weigh
+     * cached graphs against each other.
+     */
+    public long estimatedBytes() {
+        // node id, two offsets and a map slot per vertex; ids, endpoints, type and in-edge per edge
+        return vertexCount * (vertexWeights == null ? 36L : 40L) + edgeCount * (edgeWeights == null ? 28L : 32L);
+    }
+
+    // JUNG Graph views
+
+    @Override
+    public Collection<Integer> getEdges() {
+        return new IntRange(0, edgeCount);
+    }
+
+    @Override
+    public Collection<Integer> getVertices() {
+        return new IntRange(0, vertexCount);
+    }
+
+    @Override
+    public boolean containsVertex(Integer vertex) {
+        return vertex != null && vertex >= 0 && vertex < vertexCount;
+    }
+
+    @Override
+    public boolean containsEdge(Integer edge) {
+        return edge != null && edge >= 0 && edge < edgeCount;
+    }
+
+    @Override
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public Collection<Integer> getInEdges(Integer vertex) {
+        return containsVertex(vertex) ? new IntSlice(inEdges, inOffsets[vertex], inOffsets[vertex + 1]) : null;
+    }
+
+    @Override
+    public Collection<Integer> getOutEdges(Integer vertex) {
+        return containsVertex(vertex) ? new IntRange(outOffsets[vertex], outOffsets[vertex + 1]) : null;
+    }
+
+    @Override
+    public Collection<Integer> getIncidentEdges(Integer vertex) {
+        if (!containsVertex(vertex)) {
+            return null;
+        }
+        List<Integer> edges = new ArrayList<>(getOutEdges(vertex));
+        for (int i = inOffsets[vertex]; i < inOffsets[vertex + 1]; i++) {
+            // self loops are already among the out-edges
+            if (sources[inEdges[i]] != vertex) {
+                edges.add(inEdges[i]);
+            }
+        }
+        return edges;
+    }
+
+    @Override
+    public Collection<Integer> getPredecessors(Integer vertex) {
+        if (!containsVertex(vertex)) {
+            return null;
+        }
+        Set<Integer> predecessors = new LinkedHashSet<>();
+        for (int i = inOffsets[vertex]; i < inOffsets[vertex + 1]; i++) {
+            predecessors.add(sources[inEdges[i]]);
+        }
+        return predecessors;
+    }
+
+    @Override
+    public Collection<Integer> getSuccessors(Integer vertex) {
+        if (!containsVertex(vertex)) {
+            return null;
+        }
+        Set<Integer> successors = new LinkedHashSet<>();
+        for (int e = outOffsets[vertex]; e < outOffsets[vertex + 1]; e++) {
+            successors.add(targets[e]);
+        }
+        return successors;
+    }
+
+    @Override
+    public Collection<Integer> getNeighbors(Integer vertex) {
+        if (!containsVertex(vertex)) {
+            return null;
+        }
+        Collection<Integer> neighbors = getSuccessors(vertex);
+        neighbors.addAll(getPredecessors(vertex));
+        return neighbors;
+    }
+
+    @Override
+    public Integer getSource(Integer edge) {
+        return containsEdge(edge) ? sources[edge] : null;
+    }
+
+    @Override
+    public Integer getDest(Integer edge) {
+        return containsEdge(edge) ? targets[edge] : null;
+    }
+
+    @Override
+    public boolean isSource(Integer vertex, Integer edge) {
+        return containsEdge(edge) && vertex != null && sources[edge] == vertex;
+    }
+
+    @Override
+    public boolean isDest(Integer vertex, Integer edge) {
+        return containsEdge(edge) && vertex != null && targets[edge] == vertex;
+    }
+
+    @Override
+    public Pair<Integer> getEndpoints(Integer edge) {
+        return containsEdge(edge) ? new Pair<>(sources[edge], targets[edge]) : null;
+    }
+
+    @Override
+    public boolean addVertex(Integer vertex) {
+        throw new UnsupportedOperationException("CsrGraph is read-only");
+    }
+
+    @Override
+    public boolean addEdge(Integer edge, Pair<? extends Integer> endpoints, EdgeType edgeType) {
+        throw new UnsupportedOperationException("CsrGraph is read-only");
+    }
+
+    @Override
+    public boolean removeVertex(Integer vertex) {
+        throw new UnsupportedOperationException("CsrGraph is read-only");
+    }
+
+    @Override
+    public boolean removeEdge(Integer edge) {
+        throw new UnsupportedOperationException("CsrGraph is read-only");
+    }
+
+    /** The ints {@code [from, to)}. */
+    private static final class IntRange extends AbstractList<Integer> {
+        private final int from;
+        private final int to;
+
+        IntRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return from + index;
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return value instanceof Integer && (Integer) value >= from && (Integer) value < to;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /** The elements {@code [from, to)} of an int array. */
+    private static final class IntSlice extends AbstractList<Integer> {
+        private final int[] values;
+        private final int from;
+        private final int to;
+
+        IntSlice(int[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.aaman.neo4j;
+
+import java.util.Arrays;
+
+/**
+ * Fruchterman-Reingold layout with Barnes-Hut repulsion.
+ *
+ * Every iteration builds a quadtree of the current positions, so the repulsion
+ * on a vertex is summed over O(log n) cells instead of all n vertices. Forces
+ * are then computed per vertex, each writing only its own displacement, which
+ * lets {@link Pools#parallelFor} split them across cores without locking.
+ * Attraction runs over the vertex's CSR in- and out-edges. The step length is
+ * capped by a temperature that cools linearly to zero.
+ */
+final class ForceLayout {
+
+    /** Cells smaller than this fraction of their distance are approximated by their centre of mass. */
+    private static final double THETA = 0.8;
+    private static final double MIN_DISTANCE_SQUARED = 1e-12;
+
+    private ForceLayout() {
+    }
+
+    /**
+     * Moves the vertices from the positions in {@code x} and {@code y}, which are
+     * updated in place and kept inside the frame.
+     */
+    static void run(CsrGraph graph, double[] x, double[] y, LayoutOptions options) {
+        iterate(graph, x, y, null, null, options, options.width / 10);
+    }
+
+    /**
+     * Moves only the {@code movable} vertices, starting from their current positions,
+     * while every other vertex stays where it is. The fixed vertices are put in a
+     * quadtree once, so an iteration costs O(m log n) for m movable vertices, and
+     * the temperature starts low enough to keep the picture recognisable.
+     */
+    static void refine(CsrGraph graph, double[] x, double[] y, int[] movable, LayoutOptions options) {
+        int n = graph.vertexCount();
+        if (movable.length == 0) {
+            return;
+        }
+        boolean[] moving = new boolean[n];
+        for (int v : movable) {
+            moving[v] = true;
+        }
+        int[] fixed = new int[n - movable.length];
+        for (int v = 0, count = 0; v < n; v++) {
+            if (!moving[v]) {
+                fixed[count++] = v;
+            }
+        }
+        QuadTree fixedTree = new QuadTree(x, y, fixed, fixed.length);
+        iterate(graph, x, y, movable, fixedTree, options, options.width / 40);
+    }
+
+    /**
+     * @param movable the vertices to move, {@code null} for all
+     * @param fixedTree the vertices that don't move, if any
+     */
+    private static void iterate(CsrGraph graph, double[] x, double[] y, int[] movable, QuadTree fixedTree,
+                                LayoutOptions options, double start) {
+        int n = graph.vertexCount();
+        int count = movable == null ? n : movable.length;
+        if (count == 0) {
+            return;
+        }
+        double width = options.width;
+        double height = options.height;
+        double k = Math.sqrt(width * height / n);
+        double k2 = k * k;
+        double[] dx = new double[count];
+        double[] dy = new double[count];
+
+        for (int iteration = 0; iteration < options.iterations; iteration++) {
+            double temperature = start * (1 - (double) iteration / options.iterations);
+            QuadTree tree = new QuadTree(x, y, movable, count);
+
+            Pools.parallelFor(count, options.threads, (from, to) -> {
+                double[] force = new double[2];
+                for (int i = from; i < to; i++) {
+                    int v = movable == null ? i : movable[i];
+                    force[0] = 0;
+                    force[1] = 0;
+                    tree.repulse(0, x[v], y[v], k2, force);
+                    if (fixedTree != null) {
+                        fixedTree.repulse(0, x[v], y[v], k2, force);
+                    }
+                    for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                        attract(x, y, v, graph.target(e), k, force);
+                    }
+                    for (int j = graph.inStart(v); j < graph.inEnd(v); j++) {
+                        attract(x, y, v, graph.source(graph.inEdge(j)), k, force);
+                    }
+                    dx[i] = force[0];
+                    dy[i] = force[1];
+                }
+            });
+
+            Pools.parallelFor(count, options.threads, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    int v = movable == null ? i : movable[i];
+                    double length = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+                    if (length > 0) {
+                        double scale = Math.min(length, temperature) / length;
+                        x[v] = Math.min(width, Math.max(0, x[v] + dx[i] * scale));
+                        y[v] = Math.min(height, Math.max(0, y[v] + dy[i] * scale));
+                    }
+                }
+            });
+        }
+    }
+
+    // pulls v towards u with force d^2 / k
+    private static void attract(double[] x, double[] y, int v, int u, double k, double[] force) {
+        double ux = x[v] - x[u];
+        double uy = y[v] - y[u];
+        double distance = Math.sqrt(ux * ux + uy * uy);
+        force[0] -= ux * distance / k;
+        force[1] -= uy * distance / k;
+    }
+
+    /**
+     * A quadtree over points kept in flat arrays. Each cell stores the mass and
+     * coordinate sums of the points below it; the four children of a cell are
+     * allocated next to each other. Points are indexes into the coordinate arrays.
+     */
+    static final class QuadTree {
+
+        /** Coincident points stop splitting here and share a leaf. */
+        private static final int MAX_DEPTH = 48;
+
+        private final double[] px;
+        private final double[] py;
+        private double[] minX;
+        private double[] minY;
+        private double[] size;
+        private double[] mass;
+        private double[] sumX;
+        private double[] sumY;
+        private int[] firstChild;
+        private int[] point;
+        private int cells;
+
+        /**
+         * @param points the points to insert, {@code null} for {@code 0..count-1}
+         */
+        QuadTree(double[] px, double[] py, int[] points, int count) {
+            this.px = px;
+            this.py = py;
+            allocate(Math.max(16, count * 2));
+            double x0 = 0, y0 = 0, x1 = 0, y1 = 0;
+            for (int i = 0; i < count; i++) {
+                int p = points == null ? i : points[i];
+                x0 = i == 0 ? px[p] : Math.min(x0, px[p]);
+                y0 = i == 0 ? py[p] : Math.min(y0, py[p]);
+                x1 = i == 0 ? px[p] : Math.max(x1, px[p]);
+                y1 = i == 0 ? py[p] : Math.max(y1, py[p]);
+            }
+            newCell(x0, y0, Math.max(x1 - x0, y1 - y0) + 1e-9);
+            for (int i = 0; i < count; i++) {
+                insert(points == null ? i : points[i]);
+            }
+        }
+
+        private void allocate(int capacity) {
+            minX = minX == null ? new double[capacity] : Arrays.copyOf(minX, capacity);
+            minY = minY == null ? new double[capacity] : Arrays.copyOf(minY, capacity);
+            size = size == null ? new double[capacity] : Arrays.copyOf(size, capacity);
+            mass = mass == null ? new double[capacity] : Arrays.copyOf(mass, capacity);
+            sumX = sumX == null ? new double[capacity] : Arrays.copyOf(sumX, capacity);
+            sumY = sumY == null ? new double[capacity] : Arrays.copyOf(sumY, capacity);
+            firstChild = firstChild == null ? new int[capacity] : Arrays.copyOf(firstChild, capacity);
+            point = point == null ? new int[capacity] : Arrays.copyOf(point, capacity);
+        }
+
+        private int newCell(double x, double y, double side) {
+            if (cells == minX.length) {
+                allocate(cells * 2);
+            }
+            minX[cells] = x;
+            minY[cells] = y;
+            size[cells] = side;
+            mass[cells] = 0;
+            sumX[cells] = 0;
+            sumY[cells] = 0;
+            firstChild[cells] = -1;
+            point[cells] = -1;
+            return cells++;
+        }
+
+        private void split(int cell) {
+            double half = size[cell] / 2;
+            int first = newCell(minX[cell], minY[cell], half);
+            newCell(minX[cell] + half, minY[cell], half);
+            newCell(minX[cell], minY[cell] + half, half);
+            newCell(minX[cell] + half, minY[cell] + half, half);
+            firstChild[cell] = first;
+        }
+
+        private int child(int cell, double x, double y) {
+            double half = size[cell] / 2;
+            int quadrant = (x >= minX[cell] + half ? 1 : 0) + (y >= minY[cell] + half ? 2 : 0);
+            return firstChild[cell] + quadrant;
+        }
+
+        private void insert(int i) {
+            double x = px[i];
+            double y = py[i];
+            int cell = 0;
+            for (int depth = 0; ; depth++) {
+                mass[cell]++;
+                sumX[cell] += x;
+                sumY[cell] += y;
+                if (mass[cell] == 1) {
+                    point[cell] = i;
+                    return;
+                }
+                if (firstChild[cell] == -1) {
+                    if (depth >= MAX_DEPTH) {
+                        point[cell] = -1;
+                        return;
+                    }
+                    // push the single point held by this leaf one level down
+                    int other = point[cell];
+                    point[cell] = -1;
+                    split(cell);
+                    int moved = child(cell, px[other], py[other]);
+                    mass[moved] = 1;
+                    sumX[moved] = px[other];
+                    sumY[moved] = py[other];
+                    point[moved] = other;
+                }
+                cell = child(cell, x, y);
+            }
+        }
+
+        /**
+         * Adds the repulsion k^2 / d of every point below {@code cell} on the point
+         * (x, y) to {@code force}. A point at (x, y) itself exerts no force.
+         */
+        void repulse(int cell, double x, double y, double k2, double[] force) {
+            double m = mass[cell];
+            if (m == 0) {
+                return;
+            }
+            double ux = x - sumX[cell] / m;
+            double uy = y - sumY[cell] / m;
+            double d2 = ux * ux + uy * uy;
+            if (firstChild[cell] == -1 || size[cell] * size[cell] < THETA * THETA * d2) {
+                if (d2 > MIN_DISTANCE_SQUARED) {
+                    double f = m * k2 / d2;
+                    force[0] += ux * f;
+                    force[1] += uy * f;
+                }
+                return;
+            }
+            int first = firstChild[cell];
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                repulse(first + quadrant, x, y, k2, force);
+            }
+        }
+    }
+}
@@ -1,28 +1,43 @@
 package com.aaman.neo4j;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.util.ArrayList;
 
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerator;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.kernel.api.ExplicitIndexHits;
 import org.neo4j.logging.Log;
 
 import org.neo4j.procedure.*;
@@ -42,9 +57,11 @@ public class FullTextIndex
     // Only static fields and @Context-annotated fields are allowed in
     // Procedure classes. This static field is the configuration we use
     // to create full-text indexes.
-    private static final Map<String,String> FULL_TEXT =
+    static final Map<String,String> FULL_TEXT =
             stringMap( IndexManager.PROVIDER, "lucene", "type", "fulltext" );
 
+    private static final Comparator<SearchHit> BY_SCORE = Comparator.comparingDouble( hit -> hit.score );
+
     // This field declares that we need a GraphDatabaseService
     // as context when any procedure in this class is invoked
     @Context
@@ -85,32 +102,183 @@ public class FullTextIndex
      *              search by property `name` and find any value starting
      *              with `Brook`. Please refer to the Lucene Query Parser
      *              documentation for full available syntax.
+     * @param options {@code limit} and {@code skip} to page through the hits, and
+     *                {@code sort}, either {@code "score"} or a property key, prefixed
+     *                with {@code -} to sort descending. With a limit the index only
+     *                collects the top {@code skip + limit} hits, ranked by score unless
+     *                another sort is given, so the cost depends on the page size rather
+     *                than on the total number of hits.
      * @return the nodes found by the query
      */
-    // TODO: This is here as a workaround, because index().forNodes() is not read-only
-    @Procedure(value = "com.aaman.neo4j.search", mode = Mode.WRITE)
-    @Description("Execute lucene query in the given index, return found nodes")
+    // index().forNodes() is not read-only, so the index is queried through the
+    // kernel's read operations instead, see IndexRegistry#query
+    @Procedure(value = "com.aaman.neo4j.search", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.search(label, query, {limit, skip, sort}) - execute lucene query in the given index, return found nodes and their score")
     public Stream<SearchHit> search( @Name("label") String label,
-                                     @Name("query") String query )
+                                     @Name("query") String query,
+                                     @Name(value = "options", defaultValue = "{}") Map<String,Object> options )
     {
-        String index = indexName( label );
+        Metrics.Timer timer = Metrics.start( "search" );
+        long limit = ((Number) options.getOrDefault( "limit", -1L )).longValue();
+        long skip = ((Number) options.getOrDefault( "skip", 0L )).longValue();
 
-        // Avoid creating the index, if it's not there we won't be
+        // Do a lookup if there is an index, if it's not there we won't be
         // finding anything anyway!
-        if( !db.index().existsForNodes( index ))
+        ExplicitIndexHits hits = IndexRegistry.forDatabase( db )
+                .query( label, queryContext( query, limit < 0 ? -1 : skip + limit, (String) options.get( "sort" ) ) );
+        timer.phase( "query" );
+        if( hits == null )
         {
             // Just to show how you'd do logging
-            log.debug( "Skipping index query since index does not exist: `%s`", index );
+            log.debug( "Skipping index query since index does not exist: `%s`", indexName( label ) );
+            timer.stop();
+            return Stream.empty();
+        }
+
+        // Convert the result to our output record. The hits are read as the caller
+        // consumes them, so the total is recorded once the stream is closed.
+        return hitStream( hits, label, skip, limit ).onClose( timer::stop );
+    }
+
+    /**
+     * Runs the same query against the index of every given label at once and returns
+     * one stream of the best {@code limit} hits over all of them, ranked by score. A node
+     * found through several of its labels is returned once, with its best score and the
+     * label that produced it.
+     *
+     * Every index is queried for its own top {@code limit} hits in a separate read
+     * transaction on {@link Pools#WORKERS}, so the latency is close to that of the
+     * slowest index. As a consequence only committed data is searched.
+     *
+     * @param labels the label names whose indexes to query
+     * @param query the lucene query, see {@link #search(String, String, Map)}
+     * @param limit the maximum number of hits to return
+     */
+    @Procedure(value = "com.aaman.neo4j.searchMany", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.searchMany(labels, query, limit) - execute lucene query in the indexes of all labels, return the best hits")
+    public Stream<SearchHit> searchMany( @Name("labels") List<String> labels,
+                                         @Name("query") String query,
+                                         @Name(value = "limit", defaultValue = "100") long limit )
+    {
+        if ( limit <= 0 )
+        {
             return Stream.empty();
         }
+        List<Future<List<SearchHit>>> searches = new ArrayList<>( labels.size() );
+        for ( String label : labels )
+        {
+            searches.add( Pools.WORKERS.submit( () -> topHits( label, query, limit ) ) );
+        }
+
+        // Keep the best hit per node, then the best `limit` nodes in a min-heap
+        Map<Long,SearchHit> best = new HashMap<>();
+        for ( Future<List<SearchHit>> search : searches )
+        {
+            for ( SearchHit hit : Pools.await( search ) )
+            {
+                best.merge( hit.nodeId, hit, ( a, b ) -> a.score >= b.score ? a : b );
+            }
+        }
+        PriorityQueue<SearchHit> top = new PriorityQueue<>( (int) Math.min( limit, best.size() ) + 1, BY_SCORE );
+        for ( SearchHit hit : best.values() )
+        {
+            top.offer( hit );
+            if ( top.size() > limit )
+            {
+                top.poll();
+            }
+        }
+        SearchHit[] ranked = top.toArray( new SearchHit[0] );
+        Arrays.sort( ranked, BY_SCORE.reversed() );
+        return Arrays.stream( ranked );
+    }
+
+    private List<SearchHit> topHits( String label, String query, long limit )
+    {
+        List<SearchHit> hits = new ArrayList<>();
+        try ( Transaction tx = db.beginTx() )
+        {
+            ExplicitIndexHits found = IndexRegistry.forDatabase( db ).query( label, queryContext( query, limit, null ) );
+            if ( found != null )
+            {
+                try
+                {
+                    while ( found.hasNext() )
+                    {
+                        long nodeId = found.next();
+                        hits.add( new SearchHit( nodeId, found.currentScore(), label ) );
+                    }
+                }
+                finally
+                {
+                    found.close();
+                }
+            }
+            tx.success();
+        }
+        return hits;
+    }
+
+    /**
+     * Builds the lucene query for a search. When {@code top} is positive the index
+     * collects only that many hits, ordered by {@code sort} or by score if no sort
+     * is given.
+     */
+    static QueryContext queryContext( String query, long top, String sort )
+    {
+        QueryContext context = new QueryContext( query );
+        if ( sort == null || sort.isEmpty() )
+        {
+            if ( top > 0 )
+            {
+                context.sortByScore();
+            }
+        }
+        else if ( sort.equals( "score" ) )
+        {
+            context.sortByScore();
+        }
+        else if ( sort.startsWith( "-" ) )
+        {
+            context.sort( new Sort( new SortField( sort.substring( 1 ), SortField.Type.STRING, true ) ) );
+        }
+        else
+        {
+            context.sort( sort );
+        }
+        if ( top > 0 )
+        {
+            context.top( (int) Math.min( Integer.MAX_VALUE, top ) );
+        }
+        return context;
+    }
+
+    /**
+     * Streams the hits as {@link SearchHit}s after skipping {@code skip} of them, and
+     * closes them once the stream is closed. A negative {@code limit} means no limit.
+     */
+    private static Stream<SearchHit> hitStream( ExplicitIndexHits hits, String label, long skip, long limit )
+    {
+        Iterator<SearchHit> iterator = new Iterator<SearchHit>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return hits.hasNext();
+            }
 
-        // If there is an index, do a lookup and convert the result
-        // to our output record.
-        return db.index()
-                .forNodes( index )
-                .query( query )
-                .stream()
-                .map( SearchHit::new );
+            @Override
+            public SearchHit next()
+            {
+                long nodeId = hits.next();
+                return new SearchHit( nodeId, hits.currentScore(), label );
+            }
+        };
+        Stream<SearchHit> stream = StreamSupport
+                .stream( Spliterators.spliteratorUnknownSize( iterator, Spliterator.ORDERED ), false )
+                .skip( skip )
+                .onClose( hits::close );
+        return limit < 0 ? stream : stream.limit( limit );
     }
 
     /**
@@ -119,7 +287,7 @@ public class FullTextIndex
      * times, if it already exists in the index the index will be updated to match
      * the current state of the node.
      *
-     * This procedure works largely the same as {@link #search(String, String)},
+     * This procedure works largely the same as {@link #search(String, String, Map)},
      * with two notable differences. One, it is annotated with {@link Mode}.WRITE,
      * which is <i>required</i> if you want to perform updates to the graph in your
      * procedure.
@@ -136,18 +304,161 @@ public class FullTextIndex
     public void index( @Name("nodeId") long nodeId,
                        @Name("properties") List<String> propKeys )
     {
+        Metrics.Timer timer = Metrics.start( "index" );
         Node node = db.getNodeById( nodeId );
 
+        // Index every label (this is just as an com.aaman.neo4j, we could filter which labels to index)
+        indexNode( node, node.getLabels(), propKeys.toArray( new String[0] ), IndexRegistry.forDatabase( db ) );
+        timer.stop();
+    }
+
+    /**
+     * Bulk variant of {@link #index(long, List)}. The nodes are either given as a list
+     * of node ids (or nodes), in which case every label of each node is indexed just like
+     * {@code index} does, or as a label name, in which case all nodes with that label are
+     * indexed into that label's index only.
+     *
+     * The work is committed every {@code batchSize} nodes in separate transactions and the
+     * index handles are looked up once per label for the whole run, so a bulk reindex is
+     * bound by index writes rather than by one procedure call per node. Batches that were
+     * committed stay committed if a later batch fails.
+     *
+     * @param nodes a list of node ids or nodes, or a label name
+     * @param propKeys a list of property keys to index
+     * @param batchSize the number of nodes to index per transaction
+     * @return a single row with the counts and throughput of the run
+     */
+    @Procedure(value = "com.aaman.neo4j.indexBatch", mode = Mode.SCHEMA)
+    @Description("CALL com.aaman.neo4j.indexBatch(nodeIds | labelName, properties, batchSize) - index many nodes, committing every batchSize nodes")
+    public Stream<IndexBatchResult> indexBatch(@Name("nodes") Object nodes,
+                                               @Name("properties") List<String> propKeys,
+                                               @Name(value = "batchSize", defaultValue = "10000") long batchSize) {
+        long start = System.nanoTime();
+        String[] keys = propKeys.toArray(new String[0]);
+        IndexRegistry indexes = IndexRegistry.forDatabase(db);
+
+        long[] ids;
+        Batches.NodeTask task;
+        if (nodes instanceof String) {
+            Label label = Label.label((String) nodes);
+            ids = nodeIds(label);
+            Iterable<Label> only = Collections.singletonList(label);
+            task = (node, i) -> indexNode(node, only, keys, indexes);
+        } else if (nodes instanceof List) {
+            ids = nodeIds((List<?>) nodes);
+            task = (node, i) -> indexNode(node, node.getLabels(), keys, indexes);
+        } else {
+            throw new IllegalArgumentException("Expected a list of node ids or a label name but got: " + nodes);
+        }
+
+        Batches.Stats stats = Pools.await(Pools.WORKERS.submit(
+                () -> Batches.forEachNode(db, ids, (int) batchSize, task)));
+        return Stream.of(new IndexBatchResult(stats, System.nanoTime() - start));
+    }
+
+    /**
+     * Starts a background rebuild of the index of {@code label}. All nodes with the label
+     * are scanned once, their ids are split into {@code parallelism} ranges and each range
+     * is indexed by its own worker in transactions of {@code batchSize} nodes.
+     *
+     * The procedure returns as soon as the job is started, unless {@code wait} is set.
+     * Use {@link #reindexStatus(long)} to follow it and {@link #reindexCancel(long)} to
+     * stop it after the batches in flight.
+     *
+     * @param label the label whose index to rebuild
+     * @param propKeys a list of property keys to index
+     * @param config {@code parallelism} (default 4), {@code batchSize} (default 10000)
+     *               and {@code wait} (default false)
+     */
+    @Procedure(value = "com.aaman.neo4j.reindexLabel", mode = Mode.SCHEMA)
+    @Description("CALL com.aaman.neo4j.reindexLabel(label, properties, {parallelism, batchSize, wait}) - rebuild the index of a label in the background")
+    public Stream<ReindexJob.Progress> reindexLabel(@Name("label") String label,
+                                                    @Name("properties") List<String> propKeys,
+                                                    @Name(value = "config", defaultValue = "{}") Map<String,Object> config) {
+        int parallelism = ((Number) config.getOrDefault("parallelism", 4)).intValue();
+        int batchSize = ((Number) config.getOrDefault("batchSize", 10000)).intValue();
+        ReindexJob job = ReindexJob.start(db, label, propKeys.toArray(new String[0]), parallelism, batchSize);
+        if (Boolean.TRUE.equals(config.get("wait"))) {
+            job.await();
+        }
+        return Stream.of(job.progress());
+    }
+
+    @Procedure(value = "com.aaman.neo4j.reindexStatus", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.reindexStatus(jobId) - progress of one or, without an id, all reindex jobs")
+    public Stream<ReindexJob.Progress> reindexStatus(@Name(value = "jobId", defaultValue = "-1") long jobId) {
+        if (jobId < 0) {
+            return ReindexJob.all().stream().map(ReindexJob::progress);
+        }
+        ReindexJob job = ReindexJob.get(jobId);
+        return job == null ? Stream.empty() : Stream.of(job.progress());
+    }
+
+    @Procedure(value = "com.aaman.neo4j.reindexCancel", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.reindexCancel(jobId) - stop a reindex job after its current batches")
+    public Stream<ReindexJob.Progress> reindexCancel(@Name("jobId") long jobId) {
+        ReindexJob job = ReindexJob.get(jobId);
+        if (job == null) {
+            return Stream.empty();
+        }
+        job.cancel();
+        return Stream.of(job.progress());
+    }
+
+    /**
+     * Keeps the index of {@code label} up to date from now on: whenever a node gains or
+     * loses the label, or one of {@code propKeys} changes on a node with the label, the
+     * node is reindexed in the background within about a second of the commit. Calling
+     * it again for the same label replaces its property keys. Existing nodes are not
+     * touched, use {@link #reindexLabel(String, List, Map)} for those.
+     */
+    @Procedure(value = "com.aaman.neo4j.autoIndex", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.autoIndex(label, properties) - keep the index of a label up to date on every commit")
+    public Stream<AutoIndexEntry> autoIndex(@Name("label") String label,
+                                            @Name("properties") List<String> propKeys) {
+        AutoIndexer indexer = AutoIndexer.forDatabase(db, log);
+        indexer.add(label, propKeys.toArray(new String[0]));
+        return autoIndexEntries(indexer);
+    }
+
+    @Procedure(value = "com.aaman.neo4j.autoIndexRemove", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.autoIndexRemove(label) - stop keeping the index of a label up to date")
+    public Stream<AutoIndexEntry> autoIndexRemove(@Name("label") String label) {
+        AutoIndexer indexer = AutoIndexer.forDatabase(db, log);
+        indexer.remove(label);
+        return autoIndexEntries(indexer);
+    }
+
+    @Procedure(value = "com.aaman.neo4j.autoIndexList", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.autoIndexList() - labels and properties kept up to date, with the number of nodes waiting to be indexed")
+    public Stream<AutoIndexEntry> autoIndexList() {
+        return autoIndexEntries(AutoIndexer.forDatabase(db, log));
+    }
+
+    private static Stream<AutoIndexEntry> autoIndexEntries(AutoIndexer indexer) {
+        long pending = indexer.pending();
+        return indexer.config().entrySet().stream()
+                .map(entry -> new AutoIndexEntry(entry.getKey(), Arrays.asList(entry.getValue()), pending));
+    }
+
+    /**
+     * Replaces the index entries of {@code node} in the index of every given label with
+     * the current values of {@code keys}. Index handles are taken from {@code indexes},
+     * so callers indexing many nodes resolve each index only once.
+     *
+     * @return the number of index writes
+     */
+    static long indexNode( Node node, Iterable<Label> labels, String[] keys, IndexRegistry indexes )
+    {
         // Load all properties for the node once and in bulk,
-        // the resulting set will only contain those properties in `propKeys`
+        // the resulting set will only contain those properties in `keys`
         // that the node actually contains.
-        Set<Map.Entry<String,Object>> properties =
-                node.getProperties( propKeys.toArray( new String[0] ) ).entrySet();
+        Set<Map.Entry<String,Object>> properties = node.getProperties( keys ).entrySet();
 
-        // Index every label (this is just as an com.aaman.neo4j, we could filter which labels to index)
-        for ( Label label : node.getLabels() )
+        long writes = 0;
+        for ( Label label : labels )
         {
-            Index<Node> index = db.index().forNodes( indexName( label.name() ), FULL_TEXT );
+            Index<Node> index = indexes.forWrite( label.name() );
 
             // In case the node is indexed before, remove all occurrences of it so
             // we don't get old or duplicated data
@@ -157,8 +468,42 @@ public class FullTextIndex
             for ( Map.Entry<String,Object> property : properties )
             {
                 index.add( node, property.getKey(), property.getValue() );
+                writes++;
             }
         }
+        return writes;
+    }
+
+    private long[] nodeIds( Label label )
+    {
+        LongStream.Builder ids = LongStream.builder();
+        try ( ResourceIterator<Node> nodes = db.findNodes( label ) )
+        {
+            nodes.forEachRemaining( node -> ids.add( node.getId() ) );
+        }
+        return ids.build().toArray();
+    }
+
+    private static long[] nodeIds( List<?> nodes )
+    {
+        long[] ids = new long[nodes.size()];
+        int i = 0;
+        for ( Object node : nodes )
+        {
+            if ( node instanceof Node )
+            {
+                ids[i++] = ((Node) node).getId();
+            }
+            else if ( node instanceof Number )
+            {
+                ids[i++] = ((Number) node).longValue();
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Expected a node or node id but got: " + node );
+            }
+        }
+        return ids;
     }
 
 
@@ -187,16 +532,109 @@ public class FullTextIndex
      */
     public static class SearchHit
     {
-        // This records contain a single field named 'nodeId'
+        // This records contain the 'nodeId', the lucene relevance 'score' and the
+        // 'label' of the index it was found in. The score is NaN when the hits were
+        // sorted by a property
         public long nodeId;
+        public double score;
+        public String label;
+
+        public SearchHit( long nodeId, float score, String label )
+        {
+            this.nodeId = nodeId;
+            this.score = score;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Output record of {@link #indexBatch(Object, List, long)}.
+     */
+    public static class IndexBatchResult
+    {
+        public long nodes;
+        public long skipped;
+        public long writes;
+        public long batches;
+        public long millis;
+        public double nodesPerSecond;
 
-        public SearchHit( Node node )
+        public IndexBatchResult( Batches.Stats stats, long nanos )
         {
-            this.nodeId = node.getId();
+            this.nodes = stats.nodes;
+            this.skipped = stats.skipped;
+            this.writes = stats.writes;
+            this.batches = stats.batches;
+            this.millis = TimeUnit.NANOSECONDS.toMillis( nanos );
+            this.nodesPerSecond = nanos == 0 ? 0 : stats.nodes * 1e9 / nanos;
         }
     }
 
-    private String indexName( String label )
+    /**
+     * Deletes the index of {@code label} and evicts it from the shared index handles.
+     * Indexes should be dropped through this procedure rather than through the index
+     * manager directly, otherwise searches keep using the handle of the deleted index.
+     */
+    @Procedure(value = "com.aaman.neo4j.dropIndex", mode = Mode.SCHEMA)
+    @Description("CALL com.aaman.neo4j.dropIndex(label) - delete the index of a label")
+    public Stream<DropResult> dropIndex(@Name("label") String label) {
+        return Stream.of(new DropResult(label, IndexRegistry.forDatabase(db).drop(label)));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.indexRegistryStats", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.indexRegistryStats() - number of cached index handles and their hit rate")
+    public Stream<IndexRegistry.Stats> indexRegistryStats() {
+        return Stream.of(IndexRegistry.forDatabase(db).stats());
+    }
+
+    /**
+     * Output record of {@link #dropIndex(String)}.
+     */
+    public static class DropResult
+    {
+        public String label;
+        public boolean dropped;
+
+        public DropResult( String label, boolean dropped )
+        {
+            this.label = label;
+            this.dropped = dropped;
+        }
+    }
+
+    /**
+     * Output record of the property streaming procedures.
+     */
+    public static class EntityValue
+    {
+        public long entityId;
+        public Object value;
+
+        public EntityValue( PropertyContainer entity, Object value )
+        {
+            this.entityId = entity instanceof Node ? ((Node) entity).getId() : ((Relationship) entity).getId();
+            this.value = value;
+        }
+    }
+
+    /**
+     * Output record of the auto-index procedures.
+     */
+    public static class AutoIndexEntry
+    {
+        public String label;
+        public List<String> properties;
+        public long pending;
+
+        public AutoIndexEntry( String label, List<String> properties, long pending )
+        {
+            this.label = label;
+            this.properties = properties;
+            this.pending = pending;
+        }
+    }
+
+    static String indexName( String label )
     {
         return "label-" + label;
     }
@@ -237,41 +675,96 @@ public class FullTextIndex
     }
     
     
-    @Procedure(name = "com.aaman.neo4j.CyphertoJSON", mode = Mode.READ)
-    @Description("CALL com.aaman.neo4j.CyphertoJSON(cypherQuery, file) - Returns JSON array of results from Cypher Query")
-    public Stream<StringResult> CyphertoJSON(@Name("cypherQuery") String cypherQuery) throws InterruptedException,QueryExecutionException {
-      
-		ArrayList<ArrayList> paths = new ArrayList<>();
-       
-
-		JsonFactory jsonfactory = new JsonFactory();
-		Writer writer = new StringWriter();
-		String json = null;
-		try (Transaction tx = db.beginTx()) {
-		Result result = db.execute("Match (m:Movie) return m.name");	
-		
-		try {
-		        JsonGenerator jsonGenerator = jsonfactory.createJsonGenerator(writer);
-		        jsonGenerator.writeStartObject();
-
-				while (result.hasNext()) {
-            		Map<String,Object> row = result.next();
-            	 	for ( Entry<String,Object> column : row.entrySet() ){
-            		 	jsonGenerator.writeString(column.getKey() + ":" + column.getValue());
-            	 	}
-            	}
-		        jsonGenerator.writeEndArray();
-		        jsonGenerator.writeEndObject();
-		        jsonGenerator.close();
-		        json = writer.toString();
-		    } catch (IOException e) {
-		        e.printStackTrace();
-		    }
-		tx.success();
-		}
-		
-			return Stream.of(new StringResult(json));
+    @Procedure(mode = Mode.READ)
+    @Description("com.aaman.neo4j.streamNodeProps([nodes], property, skipNulls) - streams the node id and property value of every node")
+    public Stream<EntityValue> streamNodeProps(@Name("nodes") List<Node> nodes, @Name("property") String property,
+                                               @Name(value = "skipNulls", defaultValue = "false") boolean skipNulls) {
+        return entityValues(nodes, property, skipNulls);
+    }
 
+    @Procedure(mode = Mode.READ)
+    @Description("com.aaman.neo4j.streamRelProps([rels], property, skipNulls) - streams the Relationship id and property value of every Relationship")
+    public Stream<EntityValue> streamRelProps(@Name("rels") List<Relationship> rels, @Name("property") String property,
+                                              @Name(value = "skipNulls", defaultValue = "false") boolean skipNulls) {
+        return entityValues(rels, property, skipNulls);
     }
-    
+
+    /**
+     * Reads the property of each entity only as the stream is pulled, so nothing but the
+     * current row is held and downstream operators see the first rows right away.
+     */
+    private static Stream<EntityValue> entityValues(List<? extends PropertyContainer> entities, String property,
+                                                    boolean skipNulls) {
+        Stream<EntityValue> values = entities.stream()
+                .map(entity -> new EntityValue(entity, entity.getProperty(property, null)));
+        return skipNulls ? values.filter(row -> row.value != null) : values;
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("com.aaman.neo4j.getNodePropsMulti([nodes], [keys]) - returns a map of property key to the list of node values for that key")
+    public Stream<MapResult> getNodePropsMulti(@Name("nodes") List<Node> nodes, @Name("keys") List<String> keys) {
+        return Stream.of(new MapResult(columns(nodes, keys)));
+    }
+
+    @Procedure(mode = Mode.READ)
+    @Description("com.aaman.neo4j.getRelPropsMulti([rels], [keys]) - returns a map of property key to the list of Relationship values for that key")
+    public Stream<MapResult> getRelPropsMulti(@Name("rels") List<Relationship> rels, @Name("keys") List<String> keys) {
+        return Stream.of(new MapResult(columns(rels, keys)));
+    }
+
+    /**
+     * Reads {@code keys} of every entity into one list per key, in entity order, with
+     * {@code null} where an entity lacks the key. Each entity's properties are read in
+     * a single pass for all keys.
+     */
+    private static Map<String,Object> columns(List<? extends PropertyContainer> entities, List<String> keys) {
+        String[] keyArray = keys.toArray(new String[0]);
+        List<List<Object>> columns = new ArrayList<>(keyArray.length);
+        for (int k = 0; k < keyArray.length; k++) {
+            columns.add(new ArrayList<>(entities.size()));
+        }
+        for (PropertyContainer entity : entities) {
+            Map<String,Object> values = entity.getProperties(keyArray);
+            for (int k = 0; k < keyArray.length; k++) {
+                columns.get(k).add(values.get(keyArray[k]));
+            }
+        }
+        Map<String,Object> result = new LinkedHashMap<>();
+        for (int k = 0; k < keyArray.length; k++) {
+            result.put(keyArray[k], columns.get(k));
+        }
+        return result;
+    }
+
+    /**
+     * Exports the result of {@code cypherQuery} as a JSON array with one object per row.
+     * The JSON is either returned as a stream of chunks of about {@code chunkSize}
+     * characters, whose values concatenated in order form the document, or written to
+     * {@code file} below the import directory, in which case a single row with the file
+     * and row count is returned. An existing file is only replaced with {@code overwrite}.
+     * Either way rows are serialized as they are consumed.
+     *
+     * @param cypherQuery the read-only query to export
+     * @param params the parameters of the query
+     * @param config {@code chunkSize} (default 65536), {@code file}, {@code overwrite}
+     *               (default false) and {@code dedupe} (default true), see
+     *               {@link JsonValueWriter} for how values are written
+     */
+    @Procedure(name = "com.aaman.neo4j.CyphertoJSON", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.CyphertoJSON(cypherQuery, params, {chunkSize, file, overwrite, dedupe}) - Returns JSON array of results from Cypher Query, in chunks or written to a file, which must not exist unless overwrite is true")
+    public Stream<JsonExport.Chunk> CyphertoJSON(@Name("cypherQuery") String cypherQuery,
+                                                 @Name(value = "params", defaultValue = "{}") Map<String,Object> params,
+                                                 @Name(value = "config", defaultValue = "{}") Map<String,Object> config)
+            throws IOException, QueryExecutionException {
+        JsonValueWriter values = new JsonValueWriter(!Boolean.FALSE.equals(config.get("dedupe")));
+        String file = (String) config.get("file");
+        if (file != null) {
+            File target = ImportDirectory.resolve(db, file);
+            return Stream.of(JsonExport.toFile(db.execute(cypherQuery, params), values, target,
+                    Boolean.TRUE.equals(config.get("overwrite"))));
+        }
+        int chunkSize = ((Number) config.getOrDefault("chunkSize", 65536)).intValue();
+        return JsonExport.chunks(db.execute(cypherQuery, params), values, chunkSize);
+    }
+
 }
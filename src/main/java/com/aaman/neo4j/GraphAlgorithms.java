@@ -0,0 +1,222 @@
+package com.aaman.neo4j;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Centrality and component algorithms over a {@link CsrGraph}, split across
+ * {@link Pools#COMPUTE} with {@link Pools#parallelFor}.
+ *
+ * Every algorithm works on the primitive CSR arrays only, so it needs no
+ * transaction and allocates a few arrays per run rather than objects per
+ * vertex. Results are indexed by vertex; {@link CsrGraph#nodeId(int)} maps
+ * them back to nodes.
+ */
+final class GraphAlgorithms {
+
+    /** Brandes' algorithm costs a full traversal per source, so a few sources already make a range. */
+    private static final int MIN_SOURCES = 4;
+
+    private GraphAlgorithms() {
+    }
+
+    /**
+     * PageRank along the relationship directions. Every iteration pulls the rank
+     * of each vertex from its in-edges, so ranges of vertices only write their own
+     * entries. The rank of vertices without out-edges is spread over all vertices.
+     * Stops after {@code iterations} or once no score moves by more than
+     * {@code tolerance}. Scores sum to 1.
+     */
+    static double[] pageRank(CsrGraph graph, int iterations, double damping, double tolerance, int threads) {
+        int n = graph.vertexCount();
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        // rank per out-edge, so pulling reads one array
+        double[] share = new double[n];
+        if (n == 0) {
+            return rank;
+        }
+        Arrays.fill(rank, 1.0 / n);
+        double[] delta = new double[Math.max(1, threads)];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            double dangling = 0;
+            for (int v = 0; v < n; v++) {
+                int degree = graph.outEnd(v) - graph.outStart(v);
+                if (degree == 0) {
+                    dangling += rank[v];
+                    share[v] = 0;
+                } else {
+                    share[v] = rank[v] / degree;
+                }
+            }
+            double base = (1 - damping) / n + damping * dangling / n;
+            Arrays.fill(delta, 0);
+            double[] current = rank;
+            double[] updated = next;
+            Pools.parallelFor(n, threads, (from, to) -> {
+                double moved = 0;
+                for (int v = from; v < to; v++) {
+                    double sum = 0;
+                    for (int j = graph.inStart(v); j < graph.inEnd(v); j++) {
+                        sum += share[graph.source(graph.inEdge(j))];
+                    }
+                    updated[v] = base + damping * sum;
+                    moved = Math.max(moved, Math.abs(updated[v] - current[v]));
+                }
+                synchronized (delta) {
+                    delta[0] = Math.max(delta[0], moved);
+                }
+            });
+            rank = updated;
+            next = current;
+            if (delta[0] <= tolerance) {
+                break;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Betweenness centrality along the relationship directions with Brandes'
+     * algorithm, one breadth-first search per source. Sources are split into
+     * ranges, each with its own work arrays and partial sums, which are added up
+     * at the end. Parallel relationships count as separate shortest paths.
+     */
+    static double[] betweenness(CsrGraph graph, int threads) {
+        int n = graph.vertexCount();
+        double[] centrality = new double[n];
+        Pools.parallelFor(n, threads, MIN_SOURCES, (from, to) -> {
+            double[] partial = new double[n];
+            long[] paths = new long[n];
+            int[] distance = new int[n];
+            double[] dependency = new double[n];
+            // the queue doubles as the stack of vertices in order of distance
+            int[] order = new int[n];
+            Arrays.fill(distance, -1);
+            for (int source = from; source < to; source++) {
+                int head = 0;
+                int tail = 0;
+                order[tail++] = source;
+                distance[source] = 0;
+                paths[source] = 1;
+                while (head < tail) {
+                    int v = order[head++];
+                    for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                        int w = graph.target(e);
+                        if (distance[w] < 0) {
+                            distance[w] = distance[v] + 1;
+                            order[tail++] = w;
+                        }
+                        if (distance[w] == distance[v] + 1) {
+                            paths[w] += paths[v];
+                        }
+                    }
+                }
+                // predecessors are the in-neighbours one step closer to the source
+                for (int i = tail - 1; i > 0; i--) {
+                    int w = order[i];
+                    double factor = (1 + dependency[w]) / paths[w];
+                    for (int j = graph.inStart(w); j < graph.inEnd(w); j++) {
+                        int v = graph.source(graph.inEdge(j));
+                        if (distance[v] == distance[w] - 1) {
+                            dependency[v] += paths[v] * factor;
+                        }
+                    }
+                    partial[w] += dependency[w];
+                }
+                // reset only what this search touched
+                for (int i = 0; i < tail; i++) {
+                    int v = order[i];
+                    distance[v] = -1;
+                    paths[v] = 0;
+                    dependency[v] = 0;
+                }
+            }
+            synchronized (centrality) {
+                for (int v = 0; v < n; v++) {
+                    centrality[v] += partial[v];
+                }
+            }
+        });
+        return centrality;
+    }
+
+    /**
+     * Weakly connected components, ignoring relationship directions. Edges are
+     * merged in parallel into a union-find whose links are set by compare-and-set,
+     * always from the larger root to the smaller, so every component ends up
+     * rooted at its smallest vertex. Components are then named by their member
+     * with the lowest node id, which unlike the vertex order doesn't depend on
+     * the query that loaded the graph.
+     *
+     * @return for every vertex, the member of its component with the lowest node id
+     */
+    static int[] connectedComponents(CsrGraph graph, int threads) {
+        int n = graph.vertexCount();
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++) {
+            parent.set(v, v);
+        }
+        Pools.parallelFor(graph.edgeCount(), threads, (from, to) -> {
+            for (int e = from; e < to; e++) {
+                union(parent, graph.source(e), graph.target(e));
+            }
+        });
+        int[] component = new int[n];
+        Pools.parallelFor(n, threads, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                component[v] = find(parent, v);
+            }
+        });
+        return lowestNodeIds(graph, component);
+    }
+
+    /**
+     * @param groups for every vertex, a vertex naming its group
+     * @return for every vertex, the member of its group with the lowest node id
+     */
+    static int[] lowestNodeIds(CsrGraph graph, int[] groups) {
+        int n = groups.length;
+        int[] lowest = new int[n];
+        Arrays.fill(lowest, -1);
+        for (int v = 0; v < n; v++) {
+            int group = groups[v];
+            if (lowest[group] == -1 || graph.nodeId(v) < graph.nodeId(lowest[group])) {
+                lowest[group] = v;
+            }
+        }
+        int[] result = new int[n];
+        for (int v = 0; v < n; v++) {
+            result[v] = lowest[groups[v]];
+        }
+        return result;
+    }
+
+    private static int find(AtomicIntegerArray parent, int v) {
+        int p = parent.get(v);
+        while (p != v) {
+            // path halving; losing the race only skips a shortcut
+            int grandparent = parent.get(p);
+            parent.compareAndSet(v, p, grandparent);
+            v = grandparent;
+            p = parent.get(v);
+        }
+        return v;
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            int ra = find(parent, a);
+            int rb = find(parent, b);
+            if (ra == rb) {
+                return;
+            }
+            int low = Math.min(ra, rb);
+            int high = Math.max(ra, rb);
+            // fails if high stopped being a root meanwhile, then retry from the new roots
+            if (parent.compareAndSet(high, high, low)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.aaman.neo4j;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+/**
+ * Graph analytics over the same subgraphs that {@code getJungJSON} lays out: a
+ * Cypher query, or with an empty query a projection of the {@code label} and
+ * {@code relationshipType} options.
+ *
+ * The subgraph is loaded once into a {@link CsrGraph} inside the caller's
+ * transaction and the algorithm runs on {@link Pools#COMPUTE} with
+ * {@code concurrency} threads, all cores by default. The plain procedures stream
+ * a row per node; the {@code .write} ones store the result in the
+ * {@code writeProperty} of each node instead, committing every {@code batchSize}
+ * nodes from a worker, and return a summary.
+ */
+public class GraphAlgorithmsProc {
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Context
+    public Log log;
+
+    @Procedure(value = "com.aaman.neo4j.pageRank", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.pageRank(query, {params, label, relationshipType, iterations, dampingFactor, tolerance, concurrency}) - PageRank of every node")
+    public Stream<Score> pageRank(@Name(value = "query", defaultValue = "") String query,
+                                  @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        CsrGraph graph = load(query, options);
+        return scores(graph, pageRank(graph, options));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.pageRank.write", mode = Mode.WRITE)
+    @Description("CALL com.aaman.neo4j.pageRank.write(query, {params, label, relationshipType, iterations, dampingFactor, tolerance, concurrency, writeProperty: 'pagerank', batchSize}) - store the PageRank of every node")
+    public Stream<WriteResult> pageRankWrite(@Name(value = "query", defaultValue = "") String query,
+                                             @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        long start = System.nanoTime();
+        CsrGraph graph = load(query, options);
+        long loaded = System.nanoTime();
+        double[] scores = pageRank(graph, options);
+        return Stream.of(write(graph, scores, options, "pagerank", start, loaded));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.betweenness", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.betweenness(query, {params, label, relationshipType, concurrency}) - betweenness centrality of every node, along relationship directions")
+    public Stream<Score> betweenness(@Name(value = "query", defaultValue = "") String query,
+                                     @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        CsrGraph graph = load(query, options);
+        return scores(graph, GraphAlgorithms.betweenness(graph, concurrency(options)));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.betweenness.write", mode = Mode.WRITE)
+    @Description("CALL com.aaman.neo4j.betweenness.write(query, {params, label, relationshipType, concurrency, writeProperty: 'betweenness', batchSize}) - store the betweenness centrality of every node")
+    public Stream<WriteResult> betweennessWrite(@Name(value = "query", defaultValue = "") String query,
+                                                @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        long start = System.nanoTime();
+        CsrGraph graph = load(query, options);
+        long loaded = System.nanoTime();
+        double[] scores = GraphAlgorithms.betweenness(graph, concurrency(options));
+        return Stream.of(write(graph, scores, options, "betweenness", start, loaded));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.connectedComponents", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.connectedComponents(query, {params, label, relationshipType, concurrency}) - weakly connected component of every node, named by its lowest node id")
+    public Stream<Component> connectedComponents(@Name(value = "query", defaultValue = "") String query,
+                                                 @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        CsrGraph graph = load(query, options);
+        int[] components = GraphAlgorithms.connectedComponents(graph, concurrency(options));
+        return IntStream.range(0, graph.vertexCount())
+                .mapToObj(v -> new Component(graph.nodeId(v), graph.nodeId(components[v])));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.connectedComponents.write", mode = Mode.WRITE)
+    @Description("CALL com.aaman.neo4j.connectedComponents.write(query, {params, label, relationshipType, concurrency, writeProperty: 'component', batchSize}) - store the weakly connected component of every node")
+    public Stream<WriteResult> connectedComponentsWrite(@Name(value = "query", defaultValue = "") String query,
+                                                        @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        long start = System.nanoTime();
+        CsrGraph graph = load(query, options);
+        long loaded = System.nanoTime();
+        int[] components = GraphAlgorithms.connectedComponents(graph, concurrency(options));
+        long[] componentIds = new long[components.length];
+        for (int v = 0; v < components.length; v++) {
+            componentIds[v] = graph.nodeId(components[v]);
+        }
+        String property = (String) options.getOrDefault("writeProperty", "component");
+        long computed = System.nanoTime();
+        Batches.Stats stats = store(graph, options, (node, i) -> {
+            node.setProperty(property, componentIds[i]);
+            return 1;
+        });
+        return Stream.of(new WriteResult(stats, property, start, loaded, computed, System.nanoTime()));
+    }
+
+    @Procedure(value = "com.aaman.neo4j.communities", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.communities(query, {params, label, relationshipType, algorithm: 'louvain' | 'labelPropagation', iterations, concurrency}) - community of every node, named by its lowest node id")
+    public Stream<Community> communities(@Name(value = "query", defaultValue = "") String query,
+                                         @Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        CsrGraph graph = load(query, options);
+        int[] communities = communities(graph, options);
+        return IntStream.range(0, graph.vertexCount())
+                .mapToObj(v -> new Community(graph.nodeId(v), graph.nodeId(communities[v])));
+    }
+
+    /**
+     * Detects communities with the {@code algorithm} option, label propagation
+     * by default, running {@code iterations} sweeps at most, 10 by default.
+     */
+    static int[] communities(CsrGraph graph, Map<String,Object> options) {
+        String algorithm = String.valueOf(options.getOrDefault("algorithm", Communities.LABEL_PROPAGATION));
+        int iterations = LayoutOptions.intOption(options, "iterations", 10);
+        return Communities.detect(graph, algorithm, iterations, concurrency(options));
+    }
+
+    private CsrGraph load(String query, Map<String,Object> options) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null, pass '' to project the label option");
+        }
+        return GraphLoader.fromOptions(db, query, options).build();
+    }
+
+    private static double[] pageRank(CsrGraph graph, Map<String,Object> options) {
+        int iterations = LayoutOptions.intOption(options, "iterations", 20);
+        double damping = ((Number) options.getOrDefault("dampingFactor", 0.85)).doubleValue();
+        double tolerance = ((Number) options.getOrDefault("tolerance", 1e-7)).doubleValue();
+        if (!(damping >= 0 && damping < 1)) {
+            throw new IllegalArgumentException("dampingFactor must be in [0, 1), got " + damping);
+        }
+        return GraphAlgorithms.pageRank(graph, iterations, damping, tolerance, concurrency(options));
+    }
+
+    private static int concurrency(Map<String,Object> options) {
+        return Math.max(1, LayoutOptions.intOption(options, "concurrency", Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static Stream<Score> scores(CsrGraph graph, double[] scores) {
+        return IntStream.range(0, graph.vertexCount()).mapToObj(v -> new Score(graph.nodeId(v), scores[v]));
+    }
+
+    private WriteResult write(CsrGraph graph, double[] scores, Map<String,Object> options, String defaultProperty,
+                              long start, long loaded) {
+        String property = (String) options.getOrDefault("writeProperty", defaultProperty);
+        long computed = System.nanoTime();
+        Batches.Stats stats = store(graph, options, (node, i) -> {
+            node.setProperty(property, scores[i]);
+            return 1;
+        });
+        return new WriteResult(stats, property, start, loaded, computed, System.nanoTime());
+    }
+
+    /**
+     * Runs {@code task} on every node of {@code graph}, indexed by vertex, in batches
+     * committed by a worker, since the caller's own transaction would have to hold
+     * all the writes until the procedure ends.
+     */
+    private Batches.Stats store(CsrGraph graph, Map<String,Object> options, Batches.NodeTask task) {
+        int batchSize = LayoutOptions.intOption(options, "batchSize", 10000);
+        long[] ids = new long[graph.vertexCount()];
+        for (int v = 0; v < ids.length; v++) {
+            ids[v] = graph.nodeId(v);
+        }
+        return Pools.await(Pools.WORKERS.submit(() -> Batches.forEachNode(db, ids, batchSize, task)));
+    }
+
+    /**
+     * Output record of the streaming centrality procedures.
+     */
+    public static class Score {
+        public long nodeId;
+        public double score;
+
+        public Score(long nodeId, double score) {
+            this.nodeId = nodeId;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Output record of {@link #connectedComponents(String, Map)}.
+     */
+    public static class Component {
+        public long nodeId;
+        public long componentId;
+
+        public Component(long nodeId, long componentId) {
+            this.nodeId = nodeId;
+            this.componentId = componentId;
+        }
+    }
+
+    /**
+     * Output record of {@link #communities(String, Map)}.
+     */
+    public static class Community {
+        public long nodeId;
+        public long communityId;
+
+        public Community(long nodeId, long communityId) {
+            this.nodeId = nodeId;
+            this.communityId = communityId;
+        }
+    }
+
+    /**
+     * Output record of the {@code .write} procedures.
+     */
+    public static class WriteResult {
+        public long nodes;
+        public long skipped;
+        public long writes;
+        public long batches;
+        public String property;
+        public long loadMillis;
+        public long computeMillis;
+        public long writeMillis;
+
+        WriteResult(Batches.Stats stats, String property, long start, long loaded, long computed, long written) {
+            this.nodes = stats.nodes;
+            this.skipped = stats.skipped;
+            this.writes = stats.writes;
+            this.batches = stats.batches;
+            this.property = property;
+            this.loadMillis = TimeUnit.NANOSECONDS.toMillis(loaded - start);
+            this.computeMillis = TimeUnit.NANOSECONDS.toMillis(computed - loaded);
+            this.writeMillis = TimeUnit.NANOSECONDS.toMillis(written - computed);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.aaman.neo4j;
+
+/**
+ * Coordinates for the vertices of a {@link CsrGraph}, indexed by vertex, within
+ * a {@code width} by {@code height} frame.
+ */
+public final class GraphLayout {
+
+    public final CsrGraph graph;
+    public final double width;
+    public final double height;
+    final double[] x;
+    final double[] y;
+    private volatile SpatialIndex index;
+
+    GraphLayout(CsrGraph graph, double[] x, double[] y, double width, double height) {
+        this.graph = graph;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public double x(int vertex) {
+        return x[vertex];
+    }
+
+    public double y(int vertex) {
+        return y[vertex];
+    }
+
+    /**
+     * The spatial index over this layout, built on first use.
+     */
+    public SpatialIndex index() {
+        SpatialIndex built = index;
+        if (built == null) {
+            synchronized (this) {
+                built = index;
+                if (built == null) {
+                    built = new SpatialIndex(this);
+                    index = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    /** Approximate heap taken by the graph, its coordinates and their spatial index. */
+    public long estimatedBytes() {
+        return graph.estimatedBytes() + x.length * 16L + SpatialIndex.estimatedBytes(graph.vertexCount(), graph.edgeCount());
+    }
+}
@@ -0,0 +1,196 @@
+package com.aaman.neo4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+
+/**
+ * Collects the nodes and relationships of a subgraph into primitive arrays.
+ *
+ * Nodes are numbered 0..n-1 in the order they are first seen and every
+ * relationship becomes an edge between the numbers of its end nodes, so the
+ * graph is independent of any schema. A subgraph is either taken from the
+ * nodes, relationships and paths anywhere in the rows of a Cypher query, or
+ * projected from a label and relationship type.
+ *
+ * Must be used inside a transaction.
+ */
+public class GraphLoader {
+
+    private final PrimitiveLongIntMap vertices = Primitive.longIntMap();
+    private final PrimitiveLongSet relationships = Primitive.longSet();
+
+    private long[] nodeIds = new long[64];
+    private int nodeCount;
+
+    private long[] relIds = new long[64];
+    private int[] sources = new int[64];
+    private int[] targets = new int[64];
+    private int[] types = new int[64];
+    private int edgeCount;
+
+    private final Map<String,Integer> typeIndex = new HashMap<>();
+    private final List<String> typeNames = new ArrayList<>();
+
+    /**
+     * Loads the nodes, relationships and paths returned by {@code query}, run with the
+     * {@code params} option. With an empty query, projects the nodes with the
+     * {@code label} option and the relationships of the {@code relationshipType}
+     * option, or of any type, between them instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static GraphLoader fromOptions(GraphDatabaseService db, String query, Map<String,Object> options) {
+        if (query.isEmpty()) {
+            String label = (String) options.get("label");
+            if (label == null) {
+                throw new IllegalArgumentException("Either a query or the label option is required");
+            }
+            return fromProjection(db, label, (String) options.get("relationshipType"));
+        }
+        Map<String,Object> params = (Map<String,Object>) options.getOrDefault("params", Collections.emptyMap());
+        return fromQuery(db, query, params);
+    }
+
+    /**
+     * Loads every node, relationship and path returned by {@code cql}, in any column
+     * and nested in lists or maps. Relationships also add their end nodes.
+     */
+    public static GraphLoader fromQuery(GraphDatabaseService db, String cql, Map<String,Object> params) {
+        GraphLoader loader = new GraphLoader();
+        try (Result result = db.execute(cql, params)) {
+            while (result.hasNext()) {
+                for (Object value : result.next().values()) {
+                    loader.add(value);
+                }
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * Loads the nodes with {@code label} and the relationships of {@code type} between
+     * them. A {@code null} label means all nodes, a {@code null} type all relationships.
+     */
+    public static GraphLoader fromProjection(GraphDatabaseService db, String label, String type) {
+        GraphLoader loader = new GraphLoader();
+        Label nodeLabel = label == null ? null : Label.label(label);
+        try (ResourceIterator<Node> nodes = nodeLabel == null ? db.getAllNodes().iterator() : db.findNodes(nodeLabel)) {
+            while (nodes.hasNext()) {
+                loader.addNode(nodes.next());
+            }
+        }
+        RelationshipType relType = type == null ? null : RelationshipType.withName(type);
+        for (int v = 0, count = loader.nodeCount; v < count; v++) {
+            Node node = db.getNodeById(loader.nodeIds[v]);
+            Iterable<Relationship> rels = relType == null
+                    ? node.getRelationships(Direction.OUTGOING) : node.getRelationships(relType, Direction.OUTGOING);
+            for (Relationship rel : rels) {
+                if (loader.vertices.containsKey(rel.getEndNode().getId())) {
+                    loader.addRelationship(rel);
+                }
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * Adds the graph entities in {@code value}, looking into paths, lists and maps.
+     */
+    public void add(Object value) {
+        if (value instanceof Node) {
+            addNode((Node) value);
+        } else if (value instanceof Relationship) {
+            addRelationship((Relationship) value);
+        } else if (value instanceof Path) {
+            for (Node node : ((Path) value).nodes()) {
+                addNode(node);
+            }
+            for (Relationship rel : ((Path) value).relationships()) {
+                addRelationship(rel);
+            }
+        } else if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                add(element);
+            }
+        } else if (value instanceof Map) {
+            for (Object element : ((Map<?,?>) value).values()) {
+                add(element);
+            }
+        }
+    }
+
+    /**
+     * @return the number of the node
+     */
+    public int addNode(Node node) {
+        return addNode(node.getId());
+    }
+
+    private int addNode(long id) {
+        int vertex = vertices.get(id);
+        if (vertex != -1) {
+            return vertex;
+        }
+        if (nodeCount == nodeIds.length) {
+            nodeIds = Arrays.copyOf(nodeIds, nodeCount * 2);
+        }
+        nodeIds[nodeCount] = id;
+        vertices.put(id, nodeCount);
+        return nodeCount++;
+    }
+
+    public void addRelationship(Relationship rel) {
+        if (!relationships.add(rel.getId())) {
+            return;
+        }
+        if (edgeCount == relIds.length) {
+            int capacity = edgeCount * 2;
+            relIds = Arrays.copyOf(relIds, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        relIds[edgeCount] = rel.getId();
+        sources[edgeCount] = addNode(rel.getStartNode().getId());
+        targets[edgeCount] = addNode(rel.getEndNode().getId());
+        types[edgeCount] = typeIndex.computeIfAbsent(rel.getType().name(), name -> {
+            typeNames.add(name);
+            return typeNames.size() - 1;
+        });
+        edgeCount++;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * The loaded subgraph in compressed sparse row form. Vertices are numbered in
+     * the order the nodes were added; edges are renumbered by source. The graph
+     * shares arrays with this loader, which should not be added to afterwards.
+     */
+    public CsrGraph build() {
+        return new CsrGraph(nodeIds, nodeCount, vertices,
+                sources, targets, relIds, types, edgeCount, typeNames.toArray(new String[0]));
+    }
+}
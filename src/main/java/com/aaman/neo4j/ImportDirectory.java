@@ -0,0 +1,44 @@
+package com.aaman.neo4j;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+/**
+ * Resolves the files procedures are allowed to write: only files below the
+ * database's import directory, {@code dbms.directories.import}, the same place
+ * {@code LOAD CSV} reads from.
+ */
+public final class ImportDirectory {
+
+    private ImportDirectory() {
+    }
+
+    /**
+     * @param name a file name or path relative to the import directory
+     * @return the file inside the import directory, with missing parent directories created
+     * @throws IllegalStateException if no import directory is configured
+     * @throws IllegalArgumentException if {@code name} points outside the import directory
+     */
+    public static File resolve(GraphDatabaseService db, String name) throws IOException {
+        Config config = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Config.class);
+        File root = config.get(GraphDatabaseSettings.load_csv_file_url_root);
+        if (root == null) {
+            throw new IllegalStateException("Writing files requires " + GraphDatabaseSettings.load_csv_file_url_root.name() + " to be set");
+        }
+        File canonicalRoot = root.getCanonicalFile();
+        File file = new File(canonicalRoot, name).getCanonicalFile();
+        if (!file.toPath().startsWith(canonicalRoot.toPath())) {
+            throw new IllegalArgumentException("File is outside the import directory: " + name);
+        }
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,163 @@
+package com.aaman.neo4j;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.kernel.api.ExplicitIndexHits;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.api.exceptions.explicitindex.ExplicitIndexNotFoundKernelException;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+/**
+ * Shared handles to the full-text indexes of a database, keyed by label.
+ *
+ * Index handles are not bound to a transaction, so once an index is known to
+ * exist its handle can be reused by every later call and the index manager is
+ * only consulted on a miss. Only indexes that exist are cached: a missing index
+ * is looked up again on the next call, since it may have been created in the
+ * meantime. Indexes dropped through {@link #drop(String)} are evicted, anything
+ * else that deletes an index has to call {@link #invalidate(String)}.
+ *
+ * Reads go through {@link #query(String, Object)}, which uses the kernel's read
+ * operations directly: {@code IndexManager.forNodes} lazily creates the index it
+ * is asked for and therefore needs a write transaction, even for an index that
+ * already exists.
+ *
+ * All methods must be called inside a transaction.
+ */
+public class IndexRegistry {
+
+    private static final PerDatabase<IndexRegistry> INSTANCES = new PerDatabase<>(IndexRegistry::clear);
+
+    private final GraphDatabaseService db;
+    private final ThreadToStatementContextBridge statements;
+    private final Map<String,Index<Node>> indexes = new ConcurrentHashMap<>();
+    // label -> index name, for indexes known to exist
+    private final Map<String,String> readable = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private IndexRegistry(GraphDatabaseService db) {
+        this.db = db;
+        this.statements = ((GraphDatabaseAPI) db).getDependencyResolver()
+                .resolveDependency(ThreadToStatementContextBridge.class);
+    }
+
+    public static IndexRegistry forDatabase(GraphDatabaseService db) {
+        return INSTANCES.get(db, IndexRegistry::new);
+    }
+
+    /**
+     * Queries the index of {@code label} without requiring write access.
+     *
+     * @param query a lucene query string, query object or {@code QueryContext}
+     * @return the ids of the nodes found, or {@code null} if there is no such index
+     */
+    public ExplicitIndexHits query(String label, Object query) {
+        String name = readable.get(label);
+        if (name != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            name = FullTextIndex.indexName(label);
+            if (!db.index().existsForNodes(name)) {
+                return null;
+            }
+            readable.put(label, name);
+        }
+        // The hits stay valid for the rest of the transaction, like those of Index.query
+        try (Statement statement = statements.get()) {
+            return statement.readOperations().nodeExplicitIndexQuery(name, query);
+        } catch (ExplicitIndexNotFoundKernelException e) {
+            // deleted behind our back since it was cached
+            invalidate(label);
+            return null;
+        }
+    }
+
+    /**
+     * The index of {@code label} for writing, or {@code null} if it doesn't exist.
+     */
+    public Index<Node> existing(String label) {
+        Index<Node> index = indexes.get(label);
+        if (index != null) {
+            hits.increment();
+            return index;
+        }
+        misses.increment();
+        String name = FullTextIndex.indexName(label);
+        if (!db.index().existsForNodes(name)) {
+            return null;
+        }
+        return indexes.computeIfAbsent(label, l -> db.index().forNodes(name));
+    }
+
+    /**
+     * The index of {@code label}, created as a full-text index if it doesn't exist.
+     */
+    public Index<Node> forWrite(String label) {
+        Index<Node> index = indexes.get(label);
+        if (index != null) {
+            hits.increment();
+            return index;
+        }
+        misses.increment();
+        return indexes.computeIfAbsent(label,
+                l -> db.index().forNodes(FullTextIndex.indexName(l), FullTextIndex.FULL_TEXT));
+    }
+
+    /**
+     * Deletes the index of {@code label}, if there is one.
+     *
+     * @return whether an index was deleted
+     */
+    public boolean drop(String label) {
+        Index<Node> index = existing(label);
+        invalidate(label);
+        if (index == null) {
+            return false;
+        }
+        index.delete();
+        return true;
+    }
+
+    public void invalidate(String label) {
+        indexes.remove(label);
+        readable.remove(label);
+    }
+
+    public Stats stats() {
+        return new Stats(this);
+    }
+
+    private void clear() {
+        indexes.clear();
+        readable.clear();
+    }
+
+    /**
+     * Output record of the registry statistics procedure.
+     */
+    public static class Stats {
+        public long indexes;
+        public long hits;
+        public long misses;
+        public double hitRate;
+
+        Stats(IndexRegistry registry) {
+            Set<String> labels = new HashSet<>(registry.indexes.keySet());
+            labels.addAll(registry.readable.keySet());
+            this.indexes = labels.size();
+            this.hits = registry.hits.sum();
+            this.misses = registry.misses.sum();
+            this.hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.aaman.neo4j;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.graphdb.Result;
+
+/**
+ * Serializes a Cypher result as one JSON array with an object per row, keyed by
+ * column name.
+ *
+ * Rows are pulled from the result only as the output is consumed and written by a
+ * single generator, either into a reused buffer that is handed out in chunks of
+ * about {@code chunkSize} characters, or straight into a file. The concatenation of
+ * all chunks is the complete document, so the heap needed does not depend on the
+ * size of the result.
+ */
+public class JsonExport implements Iterator<JsonExport.Chunk> {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final Result result;
+    private final List<String> columns;
+    private final JsonValueWriter values;
+    private final StringBuilderWriter buffer = new StringBuilderWriter();
+    private final JsonGenerator json;
+    private final int chunkSize;
+    private long chunks;
+    private boolean finished;
+
+    private JsonExport(Result result, JsonValueWriter values, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        }
+        this.result = result;
+        this.columns = result.columns();
+        this.values = values;
+        this.chunkSize = chunkSize;
+        this.json = FACTORY.createJsonGenerator(buffer);
+        json.writeStartArray();
+    }
+
+    /**
+     * Streams the result as chunks of about {@code chunkSize} characters. Closing the
+     * stream closes the result.
+     */
+    public static Stream<Chunk> chunks(Result result, JsonValueWriter values, int chunkSize) throws IOException {
+        JsonExport export = new JsonExport(result, values, chunkSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(export, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(result::close);
+    }
+
+    /**
+     * Writes the whole result to {@code file} as UTF-8 and closes the result. An
+     * existing file is only replaced with {@code overwrite}.
+     *
+     * @return a single chunk with the number of rows and the file written, but no value
+     * @throws IllegalArgumentException if {@code file} exists and {@code overwrite} is not set
+     */
+    public static Chunk toFile(Result result, JsonValueWriter values, File file, boolean overwrite) throws IOException {
+        long rows = 0;
+        try (Result source = result;
+             Writer writer = new BufferedWriter(new OutputStreamWriter(open(file, overwrite), StandardCharsets.UTF_8));
+             JsonGenerator json = FACTORY.createJsonGenerator(writer)) {
+            List<String> columns = source.columns();
+            json.writeStartArray();
+            while (source.hasNext()) {
+                writeRow(json, columns, source.next(), values);
+                rows++;
+            }
+            json.writeEndArray();
+        }
+        return new Chunk(0, rows, null, file.getPath());
+    }
+
+    private static OutputStream open(File file, boolean overwrite) throws IOException {
+        OpenOption[] options = overwrite
+                ? new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE}
+                : new OpenOption[] {StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE};
+        try {
+            return Files.newOutputStream(file.toPath(), options);
+        } catch (FileAlreadyExistsException e) {
+            throw new IllegalArgumentException("File " + file.getName() + " already exists, pass overwrite: true to replace it", e);
+        }
+    }
+
+    private static void writeRow(JsonGenerator json, List<String> columns, Map<String,Object> row, JsonValueWriter values)
+            throws IOException {
+        json.writeStartObject();
+        for (String column : columns) {
+            json.writeFieldName(column);
+            values.write(json, row.get(column));
+        }
+        json.writeEndObject();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !finished;
+    }
+
+    @Override
+    public Chunk next() {
+        if (finished) {
+            throw new NoSuchElementException();
+        }
+        try {
+            long rows = 0;
+            // a chunk ends after the row that fills it, so it may overshoot by one row
+            while (buffer.getBuilder().length() < chunkSize && result.hasNext()) {
+                writeRow(json, columns, result.next(), values);
+                // only moves the generator's own buffer into ours, there is no I/O
+                json.flush();
+                rows++;
+            }
+            if (!result.hasNext()) {
+                json.writeEndArray();
+                json.close();
+                result.close();
+                finished = true;
+            }
+            String value = buffer.toString();
+            buffer.getBuilder().setLength(0);
+            return new Chunk(chunks++, rows, value, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Output record of the JSON export. The values of all chunks, concatenated in
+     * order, form the JSON document.
+     */
+    public static class Chunk {
+        public long chunk;
+        public long rows;
+        public String value;
+        public String file;
+
+        public Chunk(long chunk, long rows, String value, String file) {
+            this.chunk = chunk;
+            this.rows = rows;
+            this.value = value;
+            this.file = file;
+        }
+    }
+}
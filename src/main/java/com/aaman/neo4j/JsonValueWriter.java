@@ -0,0 +1,138 @@
+package com.aaman.neo4j;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Writes the values of a Cypher result to a {@link JsonGenerator}, recursing into
+ * lists, maps and arrays and keeping numbers and booleans typed.
+ *
+ * Graph entities are written as objects:
+ * <ul>
+ *     <li>nodes as {@code {"id", "labels", "properties"}}</li>
+ *     <li>relationships as {@code {"id", "type", "start", "end", "properties"}}</li>
+ *     <li>paths as {@code {"nodes", "relationships"}}, in path order</li>
+ * </ul>
+ * With de-duplication on, an entity that was already written by this writer is
+ * written again as just {@code {"id"}}, so every entity's labels and properties
+ * appear once per response. A writer therefore belongs to a single response.
+ */
+public class JsonValueWriter {
+
+    private final PrimitiveLongSet nodes;
+    private final PrimitiveLongSet relationships;
+
+    public JsonValueWriter() {
+        this(false);
+    }
+
+    public JsonValueWriter(boolean dedupe) {
+        this.nodes = dedupe ? Primitive.longSet() : null;
+        this.relationships = dedupe ? Primitive.longSet() : null;
+    }
+
+    public void write(JsonGenerator json, Object value) throws IOException {
+        if (value == null) {
+            json.writeNull();
+        } else if (value instanceof String) {
+            json.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            json.writeBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            json.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            json.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Node) {
+            writeNode(json, (Node) value);
+        } else if (value instanceof Relationship) {
+            writeRelationship(json, (Relationship) value);
+        } else if (value instanceof Path) {
+            writePath(json, (Path) value);
+        } else if (value instanceof Map) {
+            json.writeStartObject();
+            for (Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+                json.writeFieldName(String.valueOf(entry.getKey()));
+                write(json, entry.getValue());
+            }
+            json.writeEndObject();
+        } else if (value instanceof List) {
+            json.writeStartArray();
+            for (Object element : (List<?>) value) {
+                write(json, element);
+            }
+            json.writeEndArray();
+        } else if (value.getClass().isArray()) {
+            // array properties come back as primitive or String arrays
+            json.writeStartArray();
+            for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                write(json, Array.get(value, i));
+            }
+            json.writeEndArray();
+        } else {
+            json.writeString(value.toString());
+        }
+    }
+
+    private void writeNode(JsonGenerator json, Node node) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", node.getId());
+        if (nodes == null || nodes.add(node.getId())) {
+            json.writeArrayFieldStart("labels");
+            for (Label label : node.getLabels()) {
+                json.writeString(label.name());
+            }
+            json.writeEndArray();
+            writeProperties(json, node);
+        }
+        json.writeEndObject();
+    }
+
+    private void writeRelationship(JsonGenerator json, Relationship relationship) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", relationship.getId());
+        if (relationships == null || relationships.add(relationship.getId())) {
+            json.writeStringField("type", relationship.getType().name());
+            json.writeNumberField("start", relationship.getStartNode().getId());
+            json.writeNumberField("end", relationship.getEndNode().getId());
+            writeProperties(json, relationship);
+        }
+        json.writeEndObject();
+    }
+
+    private void writePath(JsonGenerator json, Path path) throws IOException {
+        json.writeStartObject();
+        json.writeArrayFieldStart("nodes");
+        for (Node node : path.nodes()) {
+            writeNode(json, node);
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("relationships");
+        for (Relationship relationship : path.relationships()) {
+            writeRelationship(json, relationship);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    // Written key by key rather than through getAllProperties(),
+    // which would build a map for every entity
+    private void writeProperties(JsonGenerator json, PropertyContainer entity) throws IOException {
+        json.writeObjectFieldStart("properties");
+        for (String key : entity.getPropertyKeys()) {
+            json.writeFieldName(key);
+            write(json, entity.getProperty(key, null));
+        }
+        json.writeEndObject();
+    }
+}
@@ -1,183 +1,219 @@
 package com.aaman.neo4j;
 
-import java.awt.Dimension;
-import java.awt.Rectangle;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintStream;
 import java.io.StringWriter;
-import java.io.Writer;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
-
-import javax.imageio.ImageIO;
-import javax.swing.JFrame;
-
-import org.apache.batik.dom.GenericDOMImplementation;
-import org.apache.commons.codec.binary.Base64;
-import org.freehep.graphics2d.VectorGraphics;
-import org.freehep.graphicsio.svg.SVGGraphics2D;
-import org.neo4j.driver.v1.Record;
-import org.neo4j.driver.v1.Session;
-import org.neo4j.driver.v1.StatementResult;
+import java.util.Collections;
+import java.util.Iterator;
+
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.factory.GraphDatabaseFactory;
-import org.w3c.dom.DOMImplementation;
-import org.w3c.dom.Document;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
 
-import com.aaman.neo4j.MovieVertex;
-import com.aaman.neo4j.NodeInfo;
-import com.aaman.neo4j.PersonVertex;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
-import edu.uci.ics.jung.algorithms.layout.GraphElementAccessor;
-import edu.uci.ics.jung.algorithms.layout.ISOMLayout;
-import edu.uci.ics.jung.graph.DirectedSparseGraph;
-import edu.uci.ics.jung.visualization.VisualizationViewer;
-import edu.uci.ics.jung.visualization.control.DefaultModalGraphMouse;
-import edu.uci.ics.jung.visualization.control.ModalGraphMouse;
-import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
 
+/**
+ * Lays out a subgraph with the {@link LayoutEngine} and renders it as JSON or SVG, headless. The subgraph
+ * comes from a {@link GraphLoader} as a {@link CsrGraph}, whose int vertices and
+ * edges map back to node and relationship ids.
+ */
 public class JungGraph {
 
-	private final DirectedSparseGraph<NodeInfo,String> graph;
     private final ObjectMapper objectMapper;
 
-	
 	public JungGraph() {
 	     objectMapper = new ObjectMapper();
-	     objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-	   	 graph = new DirectedSparseGraph<>();
 	}
 
 	public  String generateJSONGraph(final String cql, final GraphDatabaseService db)
 			throws IOException {
-				  
-			try (org.neo4j.graphdb.Transaction tx = db.beginTx()) {
-				org.neo4j.graphdb.Result result = db.execute(cql);	
-			
-				 while (result.hasNext()) {
-         			Map<String,Object> row = result.next();
-         			String targetNode = row.get("title").toString();
-         			// record.get(1).get("title").toString();
-		        	  	String sourceNode = row.get("name").toString();
-		        	  
-		        	  	String tagline = row.get("tagline").toString();
-		        	  	String released = row.get("released").toString();
-		        	  	int born = (int) row.get("born");
-		        	  	String rel = sourceNode + "-ACTED_IN-"+ targetNode;
-		        	  
-		        	  	MovieVertex mv = new MovieVertex(targetNode,tagline,released,"Movie");
-		        	  	PersonVertex pv = new PersonVertex(sourceNode,born,"Person");
-		        	  	graph.addVertex(pv);
-		        	  
-		        	  	graph.addVertex(mv);
-		        	  	graph.addEdge(rel, pv, mv);
-		        	  
-				 } 
-		    		}		
-				String JSONgraph = renderJSONGraph(graph);
+			try (Transaction tx = db.beginTx()) {
+				String JSONgraph = generateJSONGraph(GraphLoader.fromQuery(db, cql, Collections.emptyMap()), LayoutOptions.defaults(), db);
+				tx.success();
 				return JSONgraph;
+			}
+	}
 
+	/**
+	 * Lays out the loaded subgraph and renders it as {@code {"nodes": [{id, labels, name, x, y}],
+	 * "edges": [{id, type, source, target}]}}. Must be called inside a transaction.
+	 */
+	public  String generateJSONGraph(final GraphLoader loader, final LayoutOptions options, final GraphDatabaseService db)
+			throws IOException {
+		return renderJSONGraph(LayoutEngine.layout(loader.build(), options), db);
 	}
 
+	/**
+	 * Renders a computed layout as JSON, see {@link #generateJSONGraph(GraphLoader, LayoutOptions, GraphDatabaseService)}.
+	 */
+	public String renderJSONGraph(GraphLayout layout, GraphDatabaseService db) throws IOException {
+		return renderJSONGraph(layout, -1, db);
+	}
 
-	private String renderJSONGraph(DirectedSparseGraph<NodeInfo, String> g) throws IOException {
-	
-		String JSONGraph="";
-		ISOMLayout<NodeInfo,String> layout = new ISOMLayout<NodeInfo,String>(g);
-		Dimension viewerDim = new Dimension(800,800);
-		Rectangle viewerRect = new Rectangle(viewerDim);
-	    VisualizationViewer<NodeInfo,String> vv =
-	      new VisualizationViewer<NodeInfo,String>(layout, viewerDim);
-	    GraphElementAccessor<NodeInfo, String> pickSupport = 
-	            vv.getPickSupport();
-	        Collection<NodeInfo> vertices = 
-	            pickSupport.getVertices(layout, viewerRect);
-	        
-	        //print vertices collection as JSON array
-	        String verticesJSON = objectMapper.writeValueAsString(vertices);
-	        JSONGraph += verticesJSON;
-	        return JSONGraph;
+	/**
+	 * Renders a cached layout as JSON, with its id in a leading {@code "layoutId"}
+	 * field unless the id is negative.
+	 */
+	public String renderJSONGraph(GraphLayout layout, long layoutId, GraphDatabaseService db) throws IOException {
+		return renderJSONGraph(layout, layoutId, null, db);
+	}
+
+	/**
+	 * Renders a cached layout as JSON. With a level of detail only what it shows is written:
+	 * the visible {@code nodes}, {@code clusters: [{id, size, x, y, label, name, edges}]} with
+	 * negative ids, {@code edges} between visible nodes and
+	 * {@code clusterEdges: [{source, target, count}]} merged per pair of nodes or clusters.
+	 */
+	public String renderJSONGraph(GraphLayout layout, long layoutId, LevelOfDetail lod, GraphDatabaseService db)
+			throws IOException {
+		CsrGraph g = layout.graph;
+	        StringWriter writer = new StringWriter();
+	        try (JsonGenerator json = objectMapper.getFactory().createGenerator(writer)) {
+	        	json.useDefaultPrettyPrinter();
+	        	json.writeStartObject();
+	        	if (layoutId >= 0) {
+	        		json.writeNumberField("layoutId", layoutId);
+	        	}
+	        	if (lod == null) {
+	        		json.writeArrayFieldStart("nodes");
+	        		for (int v = 0; v < g.vertexCount(); v++) {
+	        			writeNode(json, layout, v, db);
+	        		}
+	        		json.writeEndArray();
+	        		json.writeArrayFieldStart("edges");
+	        		for (int e = 0; e < g.edgeCount(); e++) {
+	        			writeEdge(json, g, e);
+	        		}
+	        		json.writeEndArray();
+	        	} else {
+	        		writeView(json, layout, lod, db);
+	        	}
+	        	json.writeEndObject();
+	        }
+	        return writer.toString();
+	}
+
+	private void writeView(JsonGenerator json, GraphLayout layout, LevelOfDetail lod, GraphDatabaseService db)
+			throws IOException {
+		CsrGraph g = layout.graph;
+		LevelOfDetail.View view = lod.apply(layout);
+		json.writeArrayFieldStart("viewport");
+		json.writeNumber(lod.x1);
+		json.writeNumber(lod.y1);
+		json.writeNumber(lod.x2);
+		json.writeNumber(lod.y2);
+		json.writeEndArray();
+		json.writeNumberField("zoom", lod.zoom);
+		json.writeArrayFieldStart("nodes");
+		for (int i = 0; i < view.nodeCount; i++) {
+			writeNode(json, layout, view.nodes[i], db);
+		}
+		json.writeEndArray();
+		json.writeArrayFieldStart("clusters");
+		for (int k = 0; k < view.clusterCount; k++) {
+			// described by one member only, reading all of them would cost as much as showing them
+			Node sample = db.getNodeById(g.nodeId(view.clusterSample[k]));
+			Iterator<Label> labels = sample.getLabels().iterator();
+			json.writeStartObject();
+			json.writeNumberField("id", -(k + 1L));
+			json.writeNumberField("size", view.clusterSize[k]);
+			json.writeNumberField("x", view.clusterX[k]);
+			json.writeNumberField("y", view.clusterY[k]);
+			json.writeStringField("label", labels.hasNext() ? labels.next().name() : null);
+			json.writeStringField("name", caption(sample) + " +" + (view.clusterSize[k] - 1));
+			json.writeNumberField("edges", view.clusterEdges[k]);
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		json.writeArrayFieldStart("edges");
+		for (int i = 0; i < view.edgeCount; i++) {
+			writeEdge(json, g, view.edges[i]);
+		}
+		json.writeEndArray();
+		json.writeArrayFieldStart("clusterEdges");
+		for (int i = 0; i < view.mergedEdgeCount; i++) {
+			json.writeStartObject();
+			json.writeNumberField("source", view.mergedSource[i]);
+			json.writeNumberField("target", view.mergedTarget[i]);
+			json.writeNumberField("count", view.mergedCount[i]);
+			json.writeEndObject();
+		}
+		json.writeEndArray();
 	}
-	
+
+	private static void writeNode(JsonGenerator json, GraphLayout layout, int v, GraphDatabaseService db) throws IOException {
+		Node node = db.getNodeById(layout.graph.nodeId(v));
+		json.writeStartObject();
+		json.writeNumberField("id", node.getId());
+		json.writeArrayFieldStart("labels");
+		for (Label label : node.getLabels()) {
+			json.writeString(label.name());
+		}
+		json.writeEndArray();
+		json.writeStringField("name", caption(node));
+		json.writeNumberField("x", layout.x(v));
+		json.writeNumberField("y", layout.y(v));
+		if (layout.graph.isCollapsed()) {
+			json.writeNumberField("size", layout.graph.vertexWeight(v));
+		}
+		json.writeEndObject();
+	}
+
+	private static void writeEdge(JsonGenerator json, CsrGraph g, int e) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("id", g.relationshipId(e));
+		json.writeStringField("type", g.type(e));
+		json.writeNumberField("source", g.nodeId(g.source(e)));
+		json.writeNumberField("target", g.nodeId(g.target(e)));
+		if (g.isCollapsed()) {
+			json.writeNumberField("count", g.edgeWeight(e));
+		}
+		json.writeEndObject();
+	}
+
+	/**
+	 * The text shown for a node: its name or title, else its first label, else its id.
+	 */
+	static String caption(Node node) {
+		Object name = node.getProperty("name", null);
+		if (name == null) {
+			name = node.getProperty("title", null);
+		}
+		if (name != null) {
+			return name.toString();
+		}
+		Iterator<Label> labels = node.getLabels().iterator();
+		return labels.hasNext() ? labels.next().name() : String.valueOf(node.getId());
+	}
+
 	public  String generateSVGGraph(final String cql, final GraphDatabaseService db)
 			throws IOException {
-				  
-			try (org.neo4j.graphdb.Transaction tx = db.beginTx()) {
-				org.neo4j.graphdb.Result result = db.execute(cql);	
-			
-				 while (result.hasNext()) {
-         			Map<String,Object> row = result.next();
-         			String targetNode = row.get("title").toString();
-         			// record.get(1).get("title").toString();
-		        	  	String sourceNode = row.get("name").toString();
-		        	  
-		        	  	String tagline = row.get("tagline").toString();
-		        	  	String released = row.get("released").toString();
-		        	  	int born = (int) row.get("born");
-		        	  	String rel = sourceNode + "-ACTED_IN-"+ targetNode;
-		        	  
-		        	  	MovieVertex mv = new MovieVertex(targetNode,tagline,released,"Movie");
-		        	  	PersonVertex pv = new PersonVertex(sourceNode,born,"Person");
-		        	  	graph.addVertex(pv);
-		        	  
-		        	  	graph.addVertex(mv);
-		        	  	graph.addEdge(rel, pv, mv);
-		        	  
-				 } 
-		    		}		
-				String SVGgraph = renderSVGGraph(graph);
+			try (Transaction tx = db.beginTx()) {
+				String SVGgraph = generateSVGGraph(GraphLoader.fromQuery(db, cql, Collections.emptyMap()),
+						LayoutOptions.defaults(), SvgOutput.from(Collections.emptyMap()), db);
+				tx.success();
 				return SVGgraph;
+			}
+	}
+
+	/**
+	 * Lays out the loaded subgraph and renders it as SVG, written by the {@link SvgWriter}
+	 * without any Swing or Batik component. Must be called inside a transaction.
+	 *
+	 * @return the document as {@code output} encodes it, or the path of the file written
+	 */
+	public  String generateSVGGraph(final GraphLoader loader, final LayoutOptions options, final SvgOutput output,
+			final GraphDatabaseService db) throws IOException {
+		return renderSVGGraph(LayoutEngine.layout(loader.build(), options), output, db);
+	}
 
+	/**
+	 * Renders a computed layout as SVG, see {@link #generateSVGGraph(GraphLoader, LayoutOptions, SvgOutput, GraphDatabaseService)}.
+	 */
+	public String renderSVGGraph(GraphLayout layout, SvgOutput output, GraphDatabaseService db) throws IOException {
+		CsrGraph g = layout.graph;
+		return output.write(layout, v -> caption(db.getNodeById(g.nodeId(v))), db);
 	}
-	private String renderSVGGraph(DirectedSparseGraph<NodeInfo, String> g) throws IOException {
-		String SVGGraph="";
-		ISOMLayout<NodeInfo,String> layout = new ISOMLayout<NodeInfo,String>(g);
-		Dimension viewerDim = new Dimension(800,800);
-		Rectangle viewerRect = new Rectangle(viewerDim);
-	    VisualizationViewer<NodeInfo,String> vv =
-	      new VisualizationViewer<NodeInfo,String>(layout, viewerDim);
-	    GraphElementAccessor<NodeInfo, String> pickSupport = 
-	            vv.getPickSupport();
-	        Collection<NodeInfo> vertices = 
-	            pickSupport.getVertices(layout, viewerRect);
-	        
-        vv.getRenderContext().setVertexLabelTransformer(new ToStringLabeller());
-    
-
-    // Get a DOMImplementation.
-    DOMImplementation domImpl =
-      GenericDOMImplementation.getDOMImplementation();
-
-    // Create an instance of org.w3c.dom.Document.
-    String svgNS = "http://www.w3.org/2000/svg";
-    Document document = domImpl.createDocument(svgNS, "svg", null);
-
-    // Create an instance of the SVG Generator.
-    org.apache.batik.svggen.SVGGraphics2D svgGenerator = new org.apache.batik.svggen.SVGGraphics2D(document);
-
-    svgGenerator.setSVGCanvasSize(viewerDim);
-    vv.print(svgGenerator);
-
-    boolean useCSS = true; // we want to use CSS style attributes
-
-    StringWriter sw = new StringWriter();
-    svgGenerator.stream(sw, useCSS);
-    String result = sw.toString();
-    sw.close();
- 
-    byte[] bytes = new byte[(int)result.length()];
-    String encodedSVGString = new String(Base64.encodeBase64(bytes), "UTF-8");
-    
-   	return encodedSVGString;
-  }
 
 }
@@ -16,10 +16,12 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import javax.swing.JFrame;
@@ -51,7 +53,6 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.ogm.model.Result;
 
-import com.aaman.neo4j.NodeInfo;
 import com.aaman.neo4j.FullTextIndex.SearchHit;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
@@ -74,30 +75,245 @@ public class JungNeo4JProc {
     public Log log;
     
     @UserFunction
-    @Description("com.aaman.neo4j.getJungSVG(query) - return JUNG-rendered SVG of query results")
+    @Description("com.aaman.neo4j.getJungSVG(query, {params, label, relationshipType, layout, iterations, threads, seedLayout, positions, communities, encoding, gzip, file, cache}) - return JUNG-rendered SVG of query results, Base64 encoded by default")
     public String getJungSVG(
-            @Name("string") String query) throws IOException {
+            @Name("string") String query,
+            @Name(value="options", defaultValue = "{}") Map<String,Object> options) throws IOException {
     		  String SVGResultStr = "";
         if (query == null) {
             return null;
         }
+        Metrics.Timer timer = Metrics.start("getJungSVG");
         JungGraph graph = new JungGraph();
-        SVGResultStr = graph.generateSVGGraph(query, db);
+        SvgOutput output = SvgOutput.from(options);
+        LayoutCache.Entry entry = layout(query, options, timer);
+        timer.phase("cache");
+        SVGResultStr = output.format() == null
+                ? graph.renderSVGGraph(entry.layout, output, db)
+                : LayoutCache.forDatabase(db).output(entry, output.format(), layout -> graph.renderSVGGraph(layout, output, db));
+        timer.phase("render");
+        timer.stop();
         return SVGResultStr;
     }
 
 
 
     @UserFunction
-    @Description("com.aaman.neo4j.getJungJSON(query) - return JUNG-rendered JSON of query results - nodes, coordinates, edges")
+    @Description("com.aaman.neo4j.getJungJSON(query, {params, label, relationshipType, layout, iterations, threads, seedLayout, positions, communities, viewport, zoom, cache}) - return JUNG-rendered JSON of query results - layoutId, nodes, coordinates, edges, and clusters at a level of detail; with communities: 'louvain' | 'labelPropagation', one node per community with its size")
     public String getJungJSON(
-            @Name(value="query", defaultValue = "") String query) throws IOException {
+            @Name(value="query", defaultValue = "") String query,
+            @Name(value="options", defaultValue = "{}") Map<String,Object> options) throws IOException {
 		  String JSONResultStr = "";
 	        if (query == null) {
 	            return null;
 	        }
+	        Metrics.Timer timer = Metrics.start("getJungJSON");
 	        JungGraph graph = new JungGraph();
-	        JSONResultStr = graph.generateJSONGraph(query, db);
+	        LayoutCache.Entry entry = layout(query, options, timer);
+	        timer.phase("cache");
+	        LevelOfDetail lod = LevelOfDetail.from(options, LayoutOptions.from(options));
+	        JSONResultStr = LayoutCache.forDatabase(db).output(entry, lod == null ? "json" : "json:" + lod.format(),
+	                layout -> graph.renderJSONGraph(layout, entry.id, lod, db));
+	        timer.phase("render");
+	        timer.stop();
 	        return JSONResultStr;
     }
+
+    @Procedure(value = "com.aaman.neo4j.layoutCacheStats", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.layoutCacheStats() - size and hit rate of the cache behind getJungJSON and getJungSVG")
+    public Stream<LayoutCache.Stats> layoutCacheStats() {
+        return Stream.of(LayoutCache.forDatabase(db).stats());
+    }
+
+    @Procedure(value = "com.aaman.neo4j.layoutCacheClear", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.layoutCacheClear() - drop all cached layouts")
+    public Stream<LayoutCache.Stats> layoutCacheClear() {
+        return Stream.of(LayoutCache.forDatabase(db).clear());
+    }
+
+    /**
+     * Lays out {@code query} like {@link #getJungJSON(String, Map)} and stores the
+     * coordinates on the nodes, so later reads fetch two properties instead of
+     * running a layout. The {@code scores} option adds {@code pageRank},
+     * {@code betweenness} or {@code component} properties computed on the same graph.
+     * The writes are committed every {@code batchSize} nodes by a worker, so the
+     * transaction state stays small however large the graph. The
+     * {@code communities} option is rejected, since its layout only has a vertex
+     * per community and would leave the other members without coordinates.
+     */
+    @Procedure(value = "com.aaman.neo4j.layoutAndStore", mode = Mode.WRITE)
+    @Description("CALL com.aaman.neo4j.layoutAndStore(query, {params, label, relationshipType, layout, iterations, threads, seedLayout, positions, cache, xProp: 'x', yProp: 'y', scores: ['pageRank', 'betweenness', 'component'], batchSize: 10000}) - store layout coordinates, and optionally scores, on the nodes; the communities option is not supported")
+    public Stream<StoreResult> layoutAndStore(
+            @Name(value="query", defaultValue = "") String query,
+            @Name(value="options", defaultValue = "{}") Map<String,Object> options) {
+        if (options.get("communities") != null) {
+            throw new IllegalArgumentException("layoutAndStore does not support the communities option, it would only store the coordinates of one node per community");
+        }
+        long start = System.nanoTime();
+        Metrics.Timer timer = Metrics.start("layoutAndStore");
+        LayoutCache.Entry entry = layout(query, options, timer);
+        GraphLayout layout = entry.layout;
+        String xProp = (String) options.getOrDefault("xProp", "x");
+        String yProp = (String) options.getOrDefault("yProp", "y");
+        Map<String,Object> scores = scores(layout.graph, options);
+        timer.phase("scores");
+        long computed = System.nanoTime();
+
+        int batchSize = LayoutOptions.intOption(options, "batchSize", 10000);
+        long[] ids = new long[layout.graph.vertexCount()];
+        for (int v = 0; v < ids.length; v++) {
+            ids[v] = layout.graph.nodeId(v);
+        }
+        Batches.NodeTask task = (node, v) -> {
+            node.setProperty(xProp, layout.x(v));
+            node.setProperty(yProp, layout.y(v));
+            for (Entry<String,Object> score : scores.entrySet()) {
+                Object values = score.getValue();
+                if (values instanceof double[]) {
+                    node.setProperty(score.getKey(), ((double[]) values)[v]);
+                } else {
+                    node.setProperty(score.getKey(), ((long[]) values)[v]);
+                }
+            }
+            return 2 + scores.size();
+        };
+        Batches.Stats stats = Pools.await(Pools.WORKERS.submit(() -> Batches.forEachNode(db, ids, batchSize, task)));
+        timer.phase("write");
+        timer.stop();
+        return Stream.of(new StoreResult(entry.id, stats, start, computed, System.nanoTime()));
+    }
+
+    // property name to a double[] or long[] indexed by vertex
+    private static Map<String,Object> scores(CsrGraph graph, Map<String,Object> options) {
+        Map<String,Object> scores = new HashMap<>();
+        int threads = LayoutOptions.from(options).threads;
+        for (Object name : (List<?>) options.getOrDefault("scores", Collections.emptyList())) {
+            switch (String.valueOf(name)) {
+                case "pageRank":
+                    scores.put("pageRank", GraphAlgorithms.pageRank(graph, 20, 0.85, 1e-7, threads));
+                    break;
+                case "betweenness":
+                    scores.put("betweenness", GraphAlgorithms.betweenness(graph, threads));
+                    break;
+                case "component":
+                    int[] components = GraphAlgorithms.connectedComponents(graph, threads);
+                    long[] componentIds = new long[components.length];
+                    for (int v = 0; v < components.length; v++) {
+                        componentIds[v] = graph.nodeId(components[v]);
+                    }
+                    scores.put("component", componentIds);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown score '" + name + "', expected pageRank, betweenness or component");
+            }
+        }
+        return scores;
+    }
+
+    @Procedure(value = "com.aaman.neo4j.layoutViewport", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.layoutViewport(layoutId, x1, y1, x2, y2) - nodes and relationships of a layout from getJungJSON inside a rectangle")
+    public Stream<SpatialIndex.Item> layoutViewport(
+            @Name("layoutId") long layoutId,
+            @Name("x1") double x1, @Name("y1") double y1,
+            @Name("x2") double x2, @Name("y2") double y2) {
+        GraphLayout layout = cachedLayout(layoutId);
+        SpatialIndex index = layout.index();
+        List<SpatialIndex.Item> items = new ArrayList<>();
+        index.vertices(x1, y1, x2, y2, v -> items.add(SpatialIndex.Item.node(layout, v)));
+        index.edges(x1, y1, x2, y2, e -> items.add(SpatialIndex.Item.relationship(layout, e)));
+        return items.stream();
+    }
+
+    @Procedure(value = "com.aaman.neo4j.layoutPick", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.layoutPick(layoutId, x, y) - the node, or else the relationship, of a layout from getJungJSON under a point")
+    public Stream<SpatialIndex.Item> layoutPick(
+            @Name("layoutId") long layoutId,
+            @Name("x") double x, @Name("y") double y) {
+        GraphLayout layout = cachedLayout(layoutId);
+        SpatialIndex index = layout.index();
+        int v = index.vertexAt(x, y);
+        if (v >= 0) {
+            return Stream.of(SpatialIndex.Item.node(layout, v));
+        }
+        int e = index.edgeAt(x, y);
+        return e >= 0 ? Stream.of(SpatialIndex.Item.relationship(layout, e)) : Stream.empty();
+    }
+
+    /**
+     * Output record of {@link #layoutAndStore(String, Map)}.
+     */
+    public static class StoreResult {
+        public long layoutId;
+        public long nodes;
+        public long skipped;
+        public long writes;
+        public long batches;
+        public long computeMillis;
+        public long writeMillis;
+
+        StoreResult(long layoutId, Batches.Stats stats, long start, long computed, long written) {
+            this.layoutId = layoutId;
+            this.nodes = stats.nodes;
+            this.skipped = stats.skipped;
+            this.writes = stats.writes;
+            this.batches = stats.batches;
+            this.computeMillis = TimeUnit.NANOSECONDS.toMillis(computed - start);
+            this.writeMillis = TimeUnit.NANOSECONDS.toMillis(written - computed);
+        }
+    }
+
+    /**
+     * The layout for {@code query} and {@code options}, from the {@link LayoutCache}
+     * or loaded and computed now, of the community graph if the {@code communities}
+     * option is given, and starting from the {@code seedLayout} or {@code positions}
+     * option if given. On a miss the {@code cypher}, {@code build}, {@code communities}
+     * and {@code layout} phases are recorded on {@code timer}.
+     */
+    private LayoutCache.Entry layout(String query, Map<String,Object> options, Metrics.Timer timer) {
+        LayoutOptions layoutOptions = LayoutOptions.from(options);
+        return LayoutCache.forDatabase(db).layout(query, options, layoutOptions, () -> {
+            GraphLoader loader = GraphLoader.fromOptions(db, query, options);
+            timer.phase("cypher");
+            CsrGraph graph = loader.build();
+            timer.phase("build");
+            if (options.get("communities") != null) {
+                graph = collapse(graph, options, layoutOptions.threads);
+                timer.phase("communities");
+            }
+            GraphLayout layout = LayoutEngine.layout(graph, layoutOptions, seed(options));
+            timer.phase("layout");
+            return layout;
+        });
+    }
+
+    /**
+     * With the {@code communities} option, replaces every community found by that
+     * algorithm with a single vertex, so large graphs render as their structure.
+     */
+    private static CsrGraph collapse(CsrGraph graph, Map<String,Object> options, int threads) {
+        Object algorithm = options.get("communities");
+        if (algorithm == null) {
+            return graph;
+        }
+        int[] communities = Communities.detect(graph, algorithm.toString(), 10, threads);
+        return Communities.collapse(graph, communities);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LayoutSeed seed(Map<String,Object> options) {
+        Object seedLayout = options.get("seedLayout");
+        if (seedLayout != null) {
+            return LayoutSeed.fromLayout(cachedLayout(((Number) seedLayout).longValue()));
+        }
+        Object positions = options.get("positions");
+        return positions == null ? null : LayoutSeed.fromPositions((List<Map<String,Object>>) positions);
+    }
+
+    private GraphLayout cachedLayout(long id) {
+        GraphLayout layout = LayoutCache.forDatabase(db).layout(id);
+        if (layout == null) {
+            throw new IllegalArgumentException("No layout with id " + id + ", it may have been evicted");
+        }
+        return layout;
+    }
 }
@@ -0,0 +1,389 @@
+package com.aaman.neo4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+/**
+ * Keeps recent layouts, and what was rendered from them, for repeated calls with
+ * the same query, parameters and layout options.
+ *
+ * Entries are evicted least recently used first once their estimated size
+ * exceeds {@link #MAX_BYTES}. Each entry depends on a set of names: the
+ * relationship types in its graph, the label and type it was projected from,
+ * and every {@code :Name} in its query text. A committed transaction that
+ * touches one of those names, or that can't tell what it touched, drops the
+ * entry. Unlabelled nodes count as the name {@code ""}. The names come from
+ * the options and the query text alone, so a query with a node pattern without
+ * a label, like {@code ()} or {@code (n)}, depends on everything.
+ *
+ * A query that gets its nodes some other way, like from a procedure call, only
+ * notices changes to the names in its text. Pass {@code cache: false} for such
+ * queries if that matters.
+ *
+ * Invalidated layouts can no longer be found by key, but stay available by id,
+ * without their outputs, to seed the next layout of the changed graph. They are
+ * evicted before any current entry.
+ *
+ * A layout computed while another transaction committed changes is returned but
+ * not cached, since it may predate the change. Changes made earlier in the
+ * calling transaction itself are not detected.
+ */
+public class LayoutCache implements TransactionEventHandler<Set<String>> {
+
+    static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final PerDatabase<LayoutCache> INSTANCES = new PerDatabase<>(LayoutCache::shutdown);
+
+    /** Labels and relationship types in query patterns, and anything else following a colon. */
+    private static final Pattern NAMES = Pattern.compile(":\\s*`?([\\p{L}_][\\p{L}\\p{N}_]*)");
+    /** Node patterns without a label, like {@code ()}, {@code (n)} or {@code (n {name: 'x'})}. */
+    private static final Pattern UNLABELLED_NODE = Pattern.compile("(?<![\\p{L}\\p{N}_`])\\(\\s*([\\p{L}_][\\p{L}\\p{N}_]*)?\\s*[){]");
+    private static final String UNLABELLED = "";
+    private static final String ANYTHING = "*";
+    /** What {@link #beforeCommit} returns while nothing is cached. */
+    private static final Set<String> NOT_COLLECTED = Collections.unmodifiableSet(new HashSet<>());
+
+    private final GraphDatabaseService db;
+    // guarded by this, in access order
+    private final LinkedHashMap<List<Object>,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long,Entry> byId = new ConcurrentHashMap<>();
+    // guarded by this, invalidated entries in the order they were invalidated
+    private final LinkedHashMap<Long,Entry> retired = new LinkedHashMap<>();
+    private long bytes;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private LayoutCache(GraphDatabaseService db) {
+        this.db = db;
+    }
+
+    /**
+     * The cache of {@code db}, registered with the database on first use.
+     */
+    public static LayoutCache forDatabase(GraphDatabaseService db) {
+        return INSTANCES.get(db, database -> {
+            LayoutCache cache = new LayoutCache(database);
+            database.registerTransactionEventHandler(cache);
+            return cache;
+        });
+    }
+
+    /**
+     * Returns the cached layout for {@code query} and {@code options}, or computes
+     * it inside the caller's transaction. The {@code cache: false} option skips
+     * the cache altogether.
+     */
+    public Entry layout(String query, Map<String,Object> options, LayoutOptions layoutOptions, Supplier<GraphLayout> compute) {
+        if (Boolean.FALSE.equals(options.get("cache"))) {
+            return new Entry(-1, compute.get(), Collections.emptySet());
+        }
+        List<Object> key = Arrays.asList(query, options.get("params"), options.get("label"),
+                options.get("relationshipType"), layoutOptions.layout, layoutOptions.iterations,
+                options.get("seedLayout"), options.get("positions"), options.get("communities"));
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        long before = generation.get();
+        GraphLayout layout = compute.get();
+        Entry entry = new Entry(ids.incrementAndGet(), layout, names(layout, query, options));
+        synchronized (this) {
+            if (generation.get() == before) {
+                Entry replaced = entries.put(key, entry);
+                if (replaced != null) {
+                    forget(replaced);
+                }
+                byId.put(entry.id, entry);
+                bytes += entry.bytes;
+                evict();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns what was rendered from {@code entry} in {@code format}, or renders and
+     * keeps it with the entry.
+     */
+    public String output(Entry entry, String format, Renderer render) throws IOException {
+        String output = entry.outputs.get(format);
+        if (output != null) {
+            return output;
+        }
+        output = render.render(entry.layout);
+        synchronized (this) {
+            if (byId.get(entry.id) == entry && entry.outputs.putIfAbsent(format, output) == null) {
+                long size = 2L * output.length();
+                entry.bytes += size;
+                bytes += size;
+                evict();
+            }
+        }
+        return output;
+    }
+
+    /**
+     * @return the cached entry with {@code id}, or {@code null} once it was evicted or invalidated
+     */
+    public Entry get(long id) {
+        return byId.get(id);
+    }
+
+    /**
+     * @return the layout with {@code id}, also if it was invalidated since, or
+     *         {@code null} once it was evicted
+     */
+    public synchronized GraphLayout layout(long id) {
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            entry = retired.get(id);
+        }
+        return entry == null ? null : entry.layout;
+    }
+
+    public synchronized Stats clear() {
+        invalidations.add(entries.size());
+        entries.clear();
+        byId.clear();
+        retired.clear();
+        bytes = 0;
+        return new Stats(this);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(this);
+    }
+
+    // guarded by this
+    private void evict() {
+        Iterator<Entry> eldestRetired = retired.values().iterator();
+        while (bytes > MAX_BYTES && eldestRetired.hasNext()) {
+            bytes -= eldestRetired.next().bytes;
+            eldestRetired.remove();
+            evictions.increment();
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > MAX_BYTES && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            forget(entry);
+            evictions.increment();
+        }
+    }
+
+    // guarded by this
+    private void retire(Entry entry) {
+        forget(entry);
+        entry.outputs.clear();
+        entry.bytes = entry.layout.estimatedBytes();
+        retired.put(entry.id, entry);
+        bytes += entry.bytes;
+    }
+
+    // guarded by this
+    private void forget(Entry entry) {
+        byId.remove(entry.id);
+        bytes -= entry.bytes;
+    }
+
+    // from the loader's options and the query text, without reading any node
+    private static Set<String> names(GraphLayout layout, String query, Map<String,Object> options) {
+        Set<String> names = new HashSet<>(Arrays.asList(layout.graph.typeNames()));
+        if (UNLABELLED_NODE.matcher(query).find()) {
+            names.add(ANYTHING);
+        }
+        Matcher matcher = NAMES.matcher(query);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        for (String option : new String[] {"label", "relationshipType"}) {
+            if (options.get(option) != null) {
+                names.add(options.get(option).toString());
+            }
+        }
+        return names;
+    }
+
+    private static void addLabels(Set<String> names, Node node) {
+        boolean labelled = false;
+        for (Label label : node.getLabels()) {
+            names.add(label.name());
+            labelled = true;
+        }
+        if (!labelled) {
+            names.add(UNLABELLED);
+        }
+    }
+
+    /**
+     * Collects the labels and relationship types the transaction touches, unless
+     * nothing is cached. Even then {@link #afterCommit} bumps the generation: a
+     * layout computed meanwhile may have read the data before this write, and
+     * only that keeps it out of the cache.
+     */
+    @Override
+    public Set<String> beforeCommit(TransactionData data) {
+        if (byId.isEmpty()) {
+            return NOT_COLLECTED;
+        }
+        Set<String> touched = new HashSet<>();
+        try {
+            for (LabelEntry entry : data.assignedLabels()) {
+                touched.add(entry.label().name());
+            }
+            for (LabelEntry entry : data.removedLabels()) {
+                touched.add(entry.label().name());
+            }
+            for (Node node : data.createdNodes()) {
+                addLabels(touched, node);
+            }
+            // deleted nodes report their labels as removed, only unlabelled ones are unaccounted for
+            if (data.deletedNodes().iterator().hasNext()) {
+                touched.add(UNLABELLED);
+            }
+            for (Iterable<PropertyEntry<Node>> changes : Arrays.asList(data.assignedNodeProperties(), data.removedNodeProperties())) {
+                for (PropertyEntry<Node> change : changes) {
+                    if (!data.isDeleted(change.entity())) {
+                        addLabels(touched, change.entity());
+                    }
+                }
+            }
+            for (Relationship rel : data.createdRelationships()) {
+                touched.add(rel.getType().name());
+            }
+            for (Relationship rel : data.deletedRelationships()) {
+                touched.add(rel.getType().name());
+            }
+            for (Iterable<PropertyEntry<Relationship>> changes : Arrays.asList(data.assignedRelationshipProperties(), data.removedRelationshipProperties())) {
+                for (PropertyEntry<Relationship> change : changes) {
+                    touched.add(change.entity().getType().name());
+                }
+            }
+        } catch (NotFoundException e) {
+            // a deleted entity could not be read, assume the worst
+            touched.add(ANYTHING);
+        }
+        return touched;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, Set<String> touched) {
+        if (touched == NOT_COLLECTED) {
+            generation.incrementAndGet();
+            // anything cached since beforeCommit may have read the data before this write
+            synchronized (this) {
+                invalidations.add(entries.size());
+                entries.values().forEach(this::retire);
+                entries.clear();
+            }
+            return;
+        }
+        if (touched == null || touched.isEmpty()) {
+            return;
+        }
+        generation.incrementAndGet();
+        synchronized (this) {
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (touched.contains(ANYTHING) || entry.names.contains(ANYTHING) || !Collections.disjoint(entry.names, touched)) {
+                    it.remove();
+                    retire(entry);
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Set<String> touched) {
+    }
+
+    private void shutdown() {
+        db.unregisterTransactionEventHandler(this);
+        clear();
+    }
+
+    /** Renders a layout into one output format. */
+    @FunctionalInterface
+    public interface Renderer {
+        String render(GraphLayout layout) throws IOException;
+    }
+
+    /**
+     * A layout and the outputs rendered from it so far, by format.
+     */
+    public static final class Entry {
+        /** Id to refer to the layout later, -1 if it was not cached. */
+        public final long id;
+        public final GraphLayout layout;
+        final Set<String> names;
+        final Map<String,String> outputs = new ConcurrentHashMap<>();
+        long bytes;
+
+        Entry(long id, GraphLayout layout, Set<String> names) {
+            this.id = id;
+            this.layout = layout;
+            this.names = names;
+            this.bytes = layout.estimatedBytes();
+        }
+    }
+
+    /**
+     * Output record of the layout cache statistics.
+     */
+    public static class Stats {
+        public long entries;
+        public long retired;
+        public long bytes;
+        public long maxBytes;
+        public long hits;
+        public long misses;
+        public double hitRate;
+        public long evictions;
+        public long invalidations;
+
+        Stats(LayoutCache cache) {
+            this.entries = cache.entries.size();
+            this.retired = cache.retired.size();
+            this.bytes = cache.bytes;
+            this.maxBytes = MAX_BYTES;
+            this.hits = cache.hits.sum();
+            this.misses = cache.misses.sum();
+            this.hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+            this.evictions = cache.evictions.sum();
+            this.invalidations = cache.invalidations.sum();
+        }
+    }
+}
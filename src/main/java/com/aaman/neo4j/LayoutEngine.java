@@ -0,0 +1,170 @@
+package com.aaman.neo4j;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.algorithms.layout.CircleLayout;
+import edu.uci.ics.jung.algorithms.layout.ISOMLayout;
+import edu.uci.ics.jung.algorithms.layout.SpringLayout;
+import edu.uci.ics.jung.algorithms.util.IterativeContext;
+
+/**
+ * Computes a {@link GraphLayout} for a {@link CsrGraph}.
+ *
+ * {@code fr} is our own multi-threaded {@link ForceLayout}; {@code isom},
+ * {@code spring} and {@code circle} run the JUNG layouts of the same name
+ * directly on the graph for a fixed number of steps, without a viewer.
+ *
+ * Given a {@link LayoutSeed}, the nodes it knows keep their positions and only
+ * new nodes, and nodes whose degree changed, are placed and then refined with
+ * {@code fr} forces, whatever the layout option says.
+ */
+public final class LayoutEngine {
+
+    // a fixed seed, so the same graph and options always give the same picture
+    private static final long SEED = 0x5DEECE66DL;
+
+    private LayoutEngine() {
+    }
+
+    public static GraphLayout layout(CsrGraph graph, LayoutOptions options) {
+        switch (options.layout) {
+            case "isom":
+                return jung(graph, new ISOMLayout<>(graph), options);
+            case "spring":
+                return jung(graph, new SpringLayout<>(graph), options);
+            case "circle":
+                return jung(graph, new CircleLayout<>(graph), options);
+            default:
+                return forceDirected(graph, options);
+        }
+    }
+
+    /**
+     * Lays out {@code graph} starting from {@code seed}, or from scratch if it is {@code null}.
+     */
+    public static GraphLayout layout(CsrGraph graph, LayoutOptions options, LayoutSeed seed) {
+        if (seed == null) {
+            return layout(graph, options);
+        }
+        int n = graph.vertexCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        boolean[] placed = new boolean[n];
+        int[] movable = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            int known = seed.indexOf(graph.nodeId(v));
+            if (known >= 0) {
+                x[v] = seed.x(known);
+                y[v] = seed.y(known);
+                placed[v] = true;
+                if (seed.degreeChanged(known, LayoutSeed.degree(graph, v))) {
+                    movable[count++] = v;
+                }
+            } else {
+                movable[count++] = v;
+            }
+        }
+        movable = Arrays.copyOf(movable, count);
+        placeNearNeighbours(graph, x, y, placed, movable, options);
+        ForceLayout.refine(graph, x, y, movable, options);
+        return new GraphLayout(graph, x, y, options.width, options.height);
+    }
+
+    /**
+     * Puts each unplaced vertex close to the centroid of its placed neighbours,
+     * sweeping until new vertices attached only to other new vertices are placed
+     * too. Vertices with no placed vertex within reach land at random.
+     */
+    private static void placeNearNeighbours(CsrGraph graph, double[] x, double[] y, boolean[] placed,
+                                            int[] movable, LayoutOptions options) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        double spread = Math.sqrt((double) options.width * options.height / Math.max(1, graph.vertexCount())) / 2;
+        int[] waiting = new int[movable.length];
+        int count = 0;
+        for (int v : movable) {
+            if (!placed[v]) {
+                waiting[count++] = v;
+            }
+        }
+        boolean progress = true;
+        while (count > 0 && progress) {
+            progress = false;
+            int left = 0;
+            for (int i = 0; i < count; i++) {
+                int v = waiting[i];
+                double sumX = 0;
+                double sumY = 0;
+                int neighbours = 0;
+                for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                    int u = graph.target(e);
+                    if (placed[u]) {
+                        sumX += x[u];
+                        sumY += y[u];
+                        neighbours++;
+                    }
+                }
+                for (int j = graph.inStart(v); j < graph.inEnd(v); j++) {
+                    int u = graph.source(graph.inEdge(j));
+                    if (placed[u]) {
+                        sumX += x[u];
+                        sumY += y[u];
+                        neighbours++;
+                    }
+                }
+                if (neighbours == 0) {
+                    waiting[left++] = v;
+                    continue;
+                }
+                // jitter, so siblings don't start on the same spot
+                double angle = random.nextDouble() * 2 * Math.PI;
+                x[v] = Math.min(options.width, Math.max(0, sumX / neighbours + Math.cos(angle) * spread));
+                y[v] = Math.min(options.height, Math.max(0, sumY / neighbours + Math.sin(angle) * spread));
+                placed[v] = true;
+                progress = true;
+            }
+            count = left;
+        }
+        for (int i = 0; i < count; i++) {
+            x[waiting[i]] = random.nextDouble() * options.width;
+            y[waiting[i]] = random.nextDouble() * options.height;
+        }
+    }
+
+    private static GraphLayout forceDirected(CsrGraph graph, LayoutOptions options) {
+        int n = graph.vertexCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int v = 0; v < n; v++) {
+            x[v] = random.nextDouble() * options.width;
+            y[v] = random.nextDouble() * options.height;
+        }
+        ForceLayout.run(graph, x, y, options);
+        return new GraphLayout(graph, x, y, options.width, options.height);
+    }
+
+    private static GraphLayout jung(CsrGraph graph, AbstractLayout<Integer,Integer> layout, LayoutOptions options) {
+        // also initializes the layout
+        layout.setSize(new Dimension(options.width, options.height));
+        if (layout instanceof IterativeContext) {
+            IterativeContext steps = (IterativeContext) layout;
+            for (int i = 0; i < options.iterations && !steps.done(); i++) {
+                steps.step();
+            }
+        }
+        int n = graph.vertexCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int v = 0; v < n; v++) {
+            Point2D position = layout.apply(v);
+            x[v] = position.getX();
+            y[v] = position.getY();
+        }
+        return new GraphLayout(graph, x, y, options.width, options.height);
+    }
+}
@@ -0,0 +1,76 @@
+package com.aaman.neo4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layout settings read from the options map of {@code getJungJSON} and
+ * {@code getJungSVG}:
+ * <ul>
+ *     <li>{@code layout} - {@code fr} (default), {@code isom}, {@code spring} or {@code circle}</li>
+ *     <li>{@code iterations} - steps to run, defaults to what suits the layout</li>
+ *     <li>{@code threads} - cores for {@code fr} and for {@code communities} label propagation, defaults to all; the JUNG layouts are single threaded</li>
+ *     <li>{@code seedLayout} or {@code positions} - start from an earlier layout, see {@link LayoutSeed};
+ *         only {@code iterations} refinement steps are run then, 50 by default</li>
+ * </ul>
+ */
+public final class LayoutOptions {
+
+    public static final List<String> LAYOUTS = Collections.unmodifiableList(Arrays.asList("fr", "isom", "spring", "circle"));
+
+    public static final int WIDTH = 800;
+    public static final int HEIGHT = 800;
+
+    static final int SEEDED_ITERATIONS = 50;
+
+    public final String layout;
+    public final int iterations;
+    public final int threads;
+    public final int width;
+    public final int height;
+
+    private LayoutOptions(String layout, int iterations, int threads) {
+        this.layout = layout;
+        this.iterations = iterations;
+        this.threads = threads;
+        this.width = WIDTH;
+        this.height = HEIGHT;
+    }
+
+    public static LayoutOptions defaults() {
+        return from(Collections.emptyMap());
+    }
+
+    public static LayoutOptions from(Map<String,Object> options) {
+        String layout = String.valueOf(options.getOrDefault("layout", "fr")).toLowerCase();
+        if (!LAYOUTS.contains(layout)) {
+            throw new IllegalArgumentException("Unknown layout '" + layout + "', expected one of " + LAYOUTS);
+        }
+        boolean seeded = options.get("seedLayout") != null || options.get("positions") != null;
+        int iterations = intOption(options, "iterations", seeded ? SEEDED_ITERATIONS : defaultIterations(layout));
+        if (iterations < 0) {
+            throw new IllegalArgumentException("iterations must not be negative, got " + iterations);
+        }
+        int threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+        return new LayoutOptions(layout, iterations, Math.max(1, threads));
+    }
+
+    // ISOM moves a single neighbourhood per step, so it needs far more of them
+    private static int defaultIterations(String layout) {
+        switch (layout) {
+            case "isom":
+                return 2000;
+            case "circle":
+                return 0;
+            default:
+                return 300;
+        }
+    }
+
+    static int intOption(Map<String,Object> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        return value == null ? defaultValue : ((Number) value).intValue();
+    }
+}
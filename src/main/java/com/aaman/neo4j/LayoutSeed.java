@@ -0,0 +1,90 @@
+package com.aaman.neo4j;
+
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+
+/**
+ * Known positions of nodes from an earlier layout, to start a new layout from.
+ *
+ * A seed taken from a {@link GraphLayout} also remembers each node's degree, so
+ * nodes that gained or lost relationships since can be moved as well as the
+ * new ones.
+ */
+public final class LayoutSeed {
+
+    private final PrimitiveLongIntMap index = Primitive.longIntMap();
+    private final double[] x;
+    private final double[] y;
+    private final int[] degrees;
+
+    private LayoutSeed(int size) {
+        this.x = new double[size];
+        this.y = new double[size];
+        this.degrees = new int[size];
+    }
+
+    public static LayoutSeed fromLayout(GraphLayout layout) {
+        CsrGraph graph = layout.graph;
+        LayoutSeed seed = new LayoutSeed(graph.vertexCount());
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            seed.index.put(graph.nodeId(v), v);
+            seed.x[v] = layout.x(v);
+            seed.y[v] = layout.y(v);
+            seed.degrees[v] = degree(graph, v);
+        }
+        return seed;
+    }
+
+    /**
+     * @param positions maps with the {@code id}, {@code x} and {@code y} of a node, like
+     *                  the {@code nodes} that {@code getJungJSON} returns
+     */
+    public static LayoutSeed fromPositions(List<Map<String,Object>> positions) {
+        LayoutSeed seed = new LayoutSeed(positions.size());
+        int i = 0;
+        for (Map<String,Object> position : positions) {
+            Object id = position.get("id");
+            Object x = position.get("x");
+            Object y = position.get("y");
+            if (!(id instanceof Number && x instanceof Number && y instanceof Number)) {
+                throw new IllegalArgumentException("Positions need a numeric id, x and y, got " + position);
+            }
+            seed.index.put(((Number) id).longValue(), i);
+            seed.x[i] = ((Number) x).doubleValue();
+            seed.y[i] = ((Number) y).doubleValue();
+            seed.degrees[i] = -1;
+            i++;
+        }
+        return seed;
+    }
+
+    static int degree(CsrGraph graph, int vertex) {
+        return graph.outEnd(vertex) - graph.outStart(vertex) + graph.inEnd(vertex) - graph.inStart(vertex);
+    }
+
+    /**
+     * @return the position of the node in this seed, or -1 if it is new
+     */
+    int indexOf(long nodeId) {
+        return index.get(nodeId);
+    }
+
+    double x(int i) {
+        return x[i];
+    }
+
+    double y(int i) {
+        return y[i];
+    }
+
+    /**
+     * @return whether the node is known to have had a different degree, which is
+     *         never the case for seeds given as plain positions
+     */
+    boolean degreeChanged(int i, int degree) {
+        return degrees[i] >= 0 && degrees[i] != degree;
+    }
+}
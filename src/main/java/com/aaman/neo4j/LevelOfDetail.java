@@ -0,0 +1,248 @@
+package com.aaman.neo4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveIntIntMap;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+
+/**
+ * Reduces a layout to what is visible in a viewport at a zoom level.
+ *
+ * The viewport is cut into square cells of {@link #CELL} pixels at zoom 1, so
+ * cells get smaller as the zoom grows. A cell holding one vertex shows it as a
+ * node; a cell holding more shows a single cluster at their centroid. Edges
+ * between two visible nodes are kept, edges touching a cluster are merged into
+ * one weighted edge per pair of items, and edges inside a cluster or leaving
+ * the viewport are dropped. The result has at most one item per cell, however
+ * large the graph, and only what the layout's {@link SpatialIndex} finds in the
+ * viewport is looked at.
+ *
+ * Options: {@code viewport: [x1, y1, x2, y2]} in layout coordinates, the whole
+ * frame by default, and {@code zoom}, 1 by default.
+ */
+public final class LevelOfDetail {
+
+    static final double CELL = 40;
+
+    public final double x1;
+    public final double y1;
+    public final double x2;
+    public final double y2;
+    public final double zoom;
+
+    private LevelOfDetail(double x1, double y1, double x2, double y2, double zoom) {
+        this.x1 = Math.min(x1, x2);
+        this.y1 = Math.min(y1, y2);
+        this.x2 = Math.max(x1, x2);
+        this.y2 = Math.max(y1, y2);
+        this.zoom = zoom;
+    }
+
+    /**
+     * @return the level of detail asked for, or {@code null} if neither {@code viewport}
+     *         nor {@code zoom} is among the options
+     */
+    public static LevelOfDetail from(Map<String,Object> options, LayoutOptions layout) {
+        Object viewport = options.get("viewport");
+        Object zoom = options.get("zoom");
+        if (viewport == null && zoom == null) {
+            return null;
+        }
+        double scale = zoom == null ? 1 : ((Number) zoom).doubleValue();
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("zoom must be positive, got " + zoom);
+        }
+        if (viewport == null) {
+            return new LevelOfDetail(0, 0, layout.width, layout.height, scale);
+        }
+        List<?> corners = (List<?>) viewport;
+        if (corners.size() != 4) {
+            throw new IllegalArgumentException("viewport must be [x1, y1, x2, y2], got " + viewport);
+        }
+        return new LevelOfDetail(number(corners.get(0)), number(corners.get(1)),
+                number(corners.get(2)), number(corners.get(3)), scale);
+    }
+
+    private static double number(Object value) {
+        return ((Number) value).doubleValue();
+    }
+
+    /** Names this level of detail among the cached outputs of a layout. */
+    public String format() {
+        return "lod:" + x1 + "," + y1 + "," + x2 + "," + y2 + ":" + zoom;
+    }
+
+    public boolean contains(double x, double y) {
+        return x >= x1 && x <= x2 && y >= y1 && y <= y2;
+    }
+
+    public View apply(GraphLayout layout) {
+        CsrGraph graph = layout.graph;
+        double cell = CELL / zoom;
+        long columns = Math.max(1, (long) Math.ceil((x2 - x1) / cell));
+        long rows = Math.max(1, (long) Math.ceil((y2 - y1) / cell));
+        SpatialIndex index = layout.index();
+        int[] visible = collect(index::vertices);
+
+        // group the visible vertices by cell; cells are numbered as they are first hit
+        PrimitiveLongIntMap cells = Primitive.longIntMap();
+        PrimitiveIntIntMap cellOf = Primitive.intIntMap(visible.length);
+        int[] size = new int[16];
+        int[] weight = new int[16];
+        double[] sumX = new double[16];
+        double[] sumY = new double[16];
+        int[] first = new int[16];
+        int cellCount = 0;
+        for (int v : visible) {
+            double x = layout.x(v);
+            double y = layout.y(v);
+            // the right and bottom edges of the viewport belong to the last column and row
+            long key = Math.min(rows - 1, (long) ((y - y1) / cell)) * columns + Math.min(columns - 1, (long) ((x - x1) / cell));
+            int c = cells.get(key);
+            if (c == -1) {
+                c = cellCount++;
+                cells.put(key, c);
+                if (c == size.length) {
+                    size = Arrays.copyOf(size, c * 2);
+                    weight = Arrays.copyOf(weight, c * 2);
+                    sumX = Arrays.copyOf(sumX, c * 2);
+                    sumY = Arrays.copyOf(sumY, c * 2);
+                    first = Arrays.copyOf(first, c * 2);
+                }
+                first[c] = v;
+            }
+            size[c]++;
+            weight[c] += graph.vertexWeight(v);
+            sumX[c] += x;
+            sumY[c] += y;
+            cellOf.put(v, c);
+        }
+
+        View view = new View(cellCount);
+        // cluster index per cell, -1 for cells shown as a single node
+        int[] cluster = new int[cellCount];
+        for (int c = 0; c < cellCount; c++) {
+            if (size[c] == 1) {
+                cluster[c] = -1;
+                view.nodes[view.nodeCount++] = first[c];
+            } else {
+                int k = view.clusterCount++;
+                cluster[c] = k;
+                view.clusterX[k] = sumX[c] / size[c];
+                view.clusterY[k] = sumY[c] / size[c];
+                view.clusterSize[k] = weight[c];
+                view.clusterSample[k] = first[c];
+            }
+        }
+
+        PrimitiveLongIntMap merged = Primitive.longIntMap();
+        // edges between visible vertices are among those crossing the viewport
+        for (int e : collect(index::edges)) {
+            int source = cellOf.get(graph.source(e));
+            int target = cellOf.get(graph.target(e));
+            if (source == -1 || target == -1) {
+                continue;
+            }
+            if (source == target) {
+                if (cluster[source] >= 0) {
+                    view.clusterEdges[cluster[source]]++;
+                }
+                continue;
+            }
+            if (cluster[source] == -1 && cluster[target] == -1) {
+                view.addEdge(e);
+                continue;
+            }
+            long key = (long) source * cellCount + target;
+            int m = merged.get(key);
+            if (m == -1) {
+                merged.put(key, view.addMergedEdge(item(graph, first, cluster, source), item(graph, first, cluster, target)));
+            } else {
+                view.mergedCount[m]++;
+            }
+        }
+        return view;
+    }
+
+    private interface Query {
+        void run(double x1, double y1, double x2, double y2, IntConsumer action);
+    }
+
+    private int[] collect(Query query) {
+        int[][] found = {new int[16]};
+        int[] count = {0};
+        query.run(x1, y1, x2, y2, item -> {
+            if (count[0] == found[0].length) {
+                found[0] = Arrays.copyOf(found[0], count[0] * 2);
+            }
+            found[0][count[0]++] = item;
+        });
+        return Arrays.copyOf(found[0], count[0]);
+    }
+
+    // node id for single nodes, -(index + 1) for clusters
+    private static long item(CsrGraph graph, int[] first, int[] cluster, int cell) {
+        return cluster[cell] == -1 ? graph.nodeId(first[cell]) : -(cluster[cell] + 1L);
+    }
+
+    /**
+     * What is visible: single vertices, clusters, edges between single vertices,
+     * and merged edges between items. Clusters are referred to by the negative
+     * id {@code -(index + 1)}.
+     */
+    public static final class View {
+        public final int[] nodes;
+        public int nodeCount;
+
+        public final double[] clusterX;
+        public final double[] clusterY;
+        /** Nodes in the cluster, more than its vertices if the graph was collapsed. */
+        public final int[] clusterSize;
+        /** A member vertex, to describe the cluster by. */
+        public final int[] clusterSample;
+        /** Edges between members of the cluster. */
+        public final int[] clusterEdges;
+        public int clusterCount;
+
+        public int[] edges = new int[16];
+        public int edgeCount;
+
+        public long[] mergedSource = new long[16];
+        public long[] mergedTarget = new long[16];
+        public int[] mergedCount = new int[16];
+        public int mergedEdgeCount;
+
+        View(int cells) {
+            nodes = new int[cells];
+            clusterX = new double[cells];
+            clusterY = new double[cells];
+            clusterSize = new int[cells];
+            clusterSample = new int[cells];
+            clusterEdges = new int[cells];
+        }
+
+        void addEdge(int edge) {
+            if (edgeCount == edges.length) {
+                edges = Arrays.copyOf(edges, edgeCount * 2);
+            }
+            edges[edgeCount++] = edge;
+        }
+
+        int addMergedEdge(long source, long target) {
+            if (mergedEdgeCount == mergedSource.length) {
+                int capacity = mergedEdgeCount * 2;
+                mergedSource = Arrays.copyOf(mergedSource, capacity);
+                mergedTarget = Arrays.copyOf(mergedTarget, capacity);
+                mergedCount = Arrays.copyOf(mergedCount, capacity);
+            }
+            mergedSource[mergedEdgeCount] = source;
+            mergedTarget[mergedEdgeCount] = target;
+            mergedCount[mergedEdgeCount] = 1;
+            return mergedEdgeCount++;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.aaman.neo4j;
+
+import java.util.Map;
+
+public class MapResult {
+    public final Map<String,Object> value;
+
+    public MapResult(Map<String,Object> value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,277 @@
+package com.aaman.neo4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency of the plugin's procedures, per operation and phase, for the JVM.
+ *
+ * A procedure takes a {@link Timer} when it starts, marks the end of each phase
+ * and stops it at the end, which also records the {@code total} phase. Every
+ * phase has striped counters for calls and time, and a histogram with eight
+ * buckets per power of two of nanoseconds, so percentiles are within about 6%
+ * like an HDR histogram with one significant digit. Recording is a few atomic
+ * adds and never locks; a percentile read concurrently with recording may miss
+ * the latest calls.
+ */
+public final class Metrics {
+
+    /** The phase recorded by {@link Timer#stop()}. */
+    public static final String TOTAL = "total";
+
+    static final String OBJECT_NAME = "com.aaman.neo4j:type=Metrics";
+
+    private static final Map<String,Phase> PHASES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Timer start(String operation) {
+        return new Timer(operation);
+    }
+
+    /**
+     * @return a row per operation and phase recorded so far, sorted by name
+     */
+    public static List<Stats> stats() {
+        List<Stats> stats = new ArrayList<>();
+        for (Phase phase : new TreeMap<>(PHASES).values()) {
+            stats.add(new Stats(phase));
+        }
+        return stats;
+    }
+
+    /** Forgets everything recorded so far. */
+    public static void reset() {
+        PHASES.clear();
+    }
+
+    /**
+     * Registers the {@link MetricsMXBean} with the platform MBean server, unless
+     * it is registered already.
+     *
+     * @return whether it was registered by this call
+     */
+    public static synchronized boolean registerMXBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                return false;
+            }
+            server.registerMBean(new MXBean(), name);
+            return true;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    static void record(String operation, String phase, long nanos) {
+        PHASES.computeIfAbsent(operation + "." + phase, key -> new Phase(operation, phase)).record(nanos);
+    }
+
+    /**
+     * Times the phases of one call. Not thread safe; each call takes its own.
+     */
+    public static final class Timer {
+        private final String operation;
+        private final long start;
+        private long mark;
+
+        private Timer(String operation) {
+            this.operation = operation;
+            this.start = System.nanoTime();
+            this.mark = start;
+        }
+
+        /** Records the time since the previous phase, or the start, as {@code phase}. */
+        public void phase(String phase) {
+            long now = System.nanoTime();
+            record(operation, phase, now - mark);
+            mark = now;
+        }
+
+        /** Records the time since the start as {@link #TOTAL}. */
+        public void stop() {
+            record(operation, TOTAL, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Calls and latencies of one phase of one operation.
+     */
+    static final class Phase {
+        // values below 8ns get a bucket each, then 8 per power of two up to 2^63
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        final String operation;
+        final String name;
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        Phase(String operation, String name) {
+            this.operation = operation;
+            this.name = name;
+        }
+
+        void record(long value) {
+            long v = Math.max(0, value);
+            count.increment();
+            nanos.add(v);
+            max.accumulate(v);
+            buckets.incrementAndGet(bucket(v));
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // middle of the values falling into the bucket
+        static double value(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+            return lower + (width - 1) / 2.0;
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return the value below which that share of the recorded values lie, in nanoseconds
+         */
+        double percentile(long[] counts, long total, double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    return Math.min(value(b), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+
+    /**
+     * Output record of {@code com.aaman.neo4j.stats}, latencies in milliseconds.
+     */
+    public static class Stats {
+        public String operation;
+        public String phase;
+        public long count;
+        public double totalMillis;
+        public double meanMillis;
+        public double p50Millis;
+        public double p90Millis;
+        public double p99Millis;
+        public double p999Millis;
+        public double maxMillis;
+
+        Stats(Phase phase) {
+            long[] counts = new long[phase.buckets.length()];
+            long total = 0;
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] = phase.buckets.get(b);
+                total += counts[b];
+            }
+            this.operation = phase.operation;
+            this.phase = phase.name;
+            this.count = phase.count.sum();
+            this.totalMillis = millis(phase.nanos.sum());
+            this.meanMillis = count == 0 ? 0 : totalMillis / count;
+            this.p50Millis = millis(phase.percentile(counts, total, 0.5));
+            this.p90Millis = millis(phase.percentile(counts, total, 0.9));
+            this.p99Millis = millis(phase.percentile(counts, total, 0.99));
+            this.p999Millis = millis(phase.percentile(counts, total, 0.999));
+            this.maxMillis = millis(phase.max.get());
+        }
+
+        private static double millis(double nanos) {
+            return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * The metrics over JMX, keyed by {@code operation.phase}.
+     */
+    public interface MetricsMXBean {
+        Map<String,Long> getCounts();
+
+        Map<String,Double> getMeanMillis();
+
+        Map<String,Double> getP99Millis();
+
+        Map<String,Double> getMaxMillis();
+
+        void reset();
+    }
+
+    private static final class MXBean implements MetricsMXBean {
+        @Override
+        public Map<String,Long> getCounts() {
+            Map<String,Long> values = new TreeMap<>();
+            for (Stats stats : stats()) {
+                values.put(stats.operation + "." + stats.phase, stats.count);
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String,Double> getMeanMillis() {
+            Map<String,Double> values = new TreeMap<>();
+            for (Stats stats : stats()) {
+                values.put(stats.operation + "." + stats.phase, stats.meanMillis);
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String,Double> getP99Millis() {
+            Map<String,Double> values = new TreeMap<>();
+            for (Stats stats : stats()) {
+                values.put(stats.operation + "." + stats.phase, stats.p99Millis);
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String,Double> getMaxMillis() {
+            Map<String,Double> values = new TreeMap<>();
+            for (Stats stats : stats()) {
+                values.put(stats.operation + "." + stats.phase, stats.maxMillis);
+            }
+            return values;
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.aaman.neo4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Mode;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+/**
+ * Reports the {@link Metrics} recorded by {@code search}, {@code index},
+ * {@code getJungJSON}, {@code getJungSVG} and {@code layoutAndStore}.
+ */
+public class MetricsProc {
+
+    @Context
+    public Log log;
+
+    @Procedure(value = "com.aaman.neo4j.stats", mode = Mode.READ)
+    @Description("CALL com.aaman.neo4j.stats({reset: false, jmx: false}) - calls and latency percentiles in milliseconds of the plugin's procedures per operation and phase; reset clears them after reporting, jmx also publishes them as the MXBean com.aaman.neo4j:type=Metrics")
+    public Stream<Metrics.Stats> stats(@Name(value = "options", defaultValue = "{}") Map<String,Object> options) {
+        if (Boolean.TRUE.equals(options.get("jmx")) && Metrics.registerMXBean()) {
+            log.info("Registered MXBean %s", Metrics.OBJECT_NAME);
+        }
+        List<Metrics.Stats> stats = Metrics.stats();
+        if (Boolean.TRUE.equals(options.get("reset"))) {
+            Metrics.reset();
+        }
+        return stats.stream();
+    }
+}
@@ -1,6 +0,0 @@
-package com.aaman.neo4j;
-
-public interface NodeInfo {
-	public String toString();
-	public String getType();
-}
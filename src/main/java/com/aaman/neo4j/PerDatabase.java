@@ -0,0 +1,75 @@
+package com.aaman.neo4j;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+/**
+ * Holds one instance of a component per database, created on first use and
+ * dropped when that database shuts down.
+ *
+ * Procedures are handed a new {@link GraphDatabaseService} facade on every call,
+ * so instances are keyed by the store directory rather than by the facade.
+ */
+final class PerDatabase<T> {
+
+    private final Map<File,T> instances = new ConcurrentHashMap<>();
+    private final Consumer<T> onShutdown;
+
+    /**
+     * @param onShutdown called with the instance of a database before it shuts down
+     */
+    PerDatabase(Consumer<T> onShutdown) {
+        this.onShutdown = onShutdown;
+    }
+
+    T get(GraphDatabaseService db, Function<GraphDatabaseService,T> factory) {
+        File storeDir = ((GraphDatabaseAPI) db).getStoreDir();
+        T instance = instances.get(storeDir);
+        if (instance != null) {
+            return instance;
+        }
+        return instances.computeIfAbsent(storeDir, dir -> {
+            T created = factory.apply(db);
+            db.registerKernelEventHandler(new Shutdown(dir));
+            return created;
+        });
+    }
+
+    private class Shutdown implements KernelEventHandler {
+        private final File storeDir;
+
+        Shutdown(File storeDir) {
+            this.storeDir = storeDir;
+        }
+
+        @Override
+        public void beforeShutdown() {
+            T instance = instances.remove(storeDir);
+            if (instance != null) {
+                onShutdown.accept(instance);
+            }
+        }
+
+        @Override
+        public void kernelPanic(ErrorState error) {
+        }
+
+        @Override
+        public Object getResource() {
+            return null;
+        }
+
+        @Override
+        public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+            return ExecutionOrder.DOESNT_MATTER;
+        }
+    }
+}
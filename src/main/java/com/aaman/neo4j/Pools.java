@@ -0,0 +1,107 @@
+package com.aaman.neo4j;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared thread pools for the procedures in this plugin.
+ *
+ * Procedures run on the thread that is bound to the caller's transaction, so any
+ * work that needs its own transactions (batched commits) has to be handed to
+ * another thread. The pool threads are daemons so they never keep the database
+ * JVM alive on shutdown.
+ */
+public final class Pools {
+
+    /** Unbounded pool for transactional workers, idle threads are reclaimed after a minute. */
+    public static final ExecutorService WORKERS = Executors.newCachedThreadPool(daemon("aaman-neo4j-worker"));
+
+    /** Fork-join pool for CPU-bound work that needs no transaction, one thread per core. */
+    public static final ForkJoinPool COMPUTE = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("aaman-neo4j-compute-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    /** Below this many elements per range, splitting costs more than it saves. */
+    private static final int MIN_RANGE = 256;
+
+    /** Work on the index range {@code [from, to)}. */
+    @FunctionalInterface
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private Pools() {
+    }
+
+    /**
+     * Runs {@code task} over {@code [0, count)} split into at most {@code threads}
+     * contiguous ranges. The caller runs the first range and the others go to
+     * {@link #COMPUTE}; returns when all are done and rethrows the first failure.
+     */
+    public static void parallelFor(int count, int threads, RangeTask task) {
+        parallelFor(count, threads, MIN_RANGE, task);
+    }
+
+    /**
+     * Like {@link #parallelFor(int, int, RangeTask)}, for elements costly enough to
+     * split into ranges as short as {@code minRange}.
+     */
+    public static void parallelFor(int count, int threads, int minRange, RangeTask task) {
+        int parts = Math.min(threads, count / minRange);
+        if (parts <= 1) {
+            task.run(0, count);
+            return;
+        }
+        ForkJoinTask<?>[] forks = new ForkJoinTask<?>[parts - 1];
+        for (int part = 1; part < parts; part++) {
+            int from = (int) ((long) count * part / parts);
+            int to = (int) ((long) count * (part + 1) / parts);
+            forks[part - 1] = COMPUTE.submit(() -> task.run(from, to));
+        }
+        task.run(0, (int) ((long) count / parts));
+        for (ForkJoinTask<?> fork : forks) {
+            fork.join();
+        }
+    }
+
+    /**
+     * Waits for a worker and rethrows its failure unchecked, so procedures surface
+     * the original exception rather than an {@link ExecutionException}.
+     */
+    public static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for worker", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    static ThreadFactory daemon(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,187 @@
+package com.aaman.neo4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * A background rebuild of the full-text index of one label.
+ *
+ * The job scans the label once to collect the node ids, splits the id array into
+ * one contiguous range per worker and indexes every range in batched transactions
+ * on {@link Pools#WORKERS}. Progress is tracked with plain counters so that
+ * {@link #progress()} can be read at any time without touching the workers.
+ */
+public class ReindexJob {
+
+    public enum State { SCANNING, RUNNING, DONE, CANCELLED, FAILED }
+
+    // Finished jobs are kept around so their outcome can still be looked up,
+    // but only the most recent ones.
+    private static final int RETAINED_JOBS = 100;
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final Map<Long,ReindexJob> JOBS = new ConcurrentSkipListMap<>();
+
+    private final long id = IDS.incrementAndGet();
+    private final GraphDatabaseService db;
+    private final String label;
+    private final String[] keys;
+    private final int parallelism;
+    private final int batchSize;
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long total = -1;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+    private volatile State state = State.SCANNING;
+    private volatile String error;
+    private volatile Future<?> future;
+
+    private ReindexJob(GraphDatabaseService db, String label, String[] keys, int parallelism, int batchSize) {
+        if (parallelism <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("parallelism and batchSize must be positive");
+        }
+        this.db = db;
+        this.label = label;
+        this.keys = keys;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    public static ReindexJob start(GraphDatabaseService db, String label, String[] keys, int parallelism, int batchSize) {
+        ReindexJob job = new ReindexJob(db, label, keys, parallelism, batchSize);
+        JOBS.put(job.id, job);
+        evictFinished();
+        job.future = Pools.WORKERS.submit(job::run);
+        return job;
+    }
+
+    public static ReindexJob get(long id) {
+        return JOBS.get(id);
+    }
+
+    public static Collection<ReindexJob> all() {
+        return new ArrayList<>(JOBS.values());
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** Blocks until the job has finished, successfully or not. */
+    public void await() {
+        Pools.await(future);
+    }
+
+    private void run() {
+        try {
+            long[] ids = scan();
+            total = ids.length;
+            state = State.RUNNING;
+
+            IndexRegistry indexes = IndexRegistry.forDatabase(db);
+            Iterable<Label> labels = Collections.singletonList(Label.label(label));
+            Batches.NodeTask task = (node, i) -> FullTextIndex.indexNode(node, labels, keys, indexes);
+
+            // no more workers than there are batches to hand out
+            int workers = Math.max(1, Math.min(parallelism, (ids.length + batchSize - 1) / batchSize));
+            int chunk = (ids.length + workers - 1) / workers;
+            Future<?>[] ranges = new Future<?>[workers];
+            for (int w = 0; w < workers; w++) {
+                int from = Math.min(ids.length, w * chunk);
+                int to = Math.min(ids.length, from + chunk);
+                ranges[w] = Pools.WORKERS.submit(() -> {
+                    Batches.Stats stats = Batches.forEachNode(db, ids, from, to, batchSize, task,
+                            () -> cancelled, done::addAndGet);
+                    writes.addAndGet(stats.writes);
+                });
+            }
+            for (Future<?> range : ranges) {
+                Pools.await(range);
+            }
+            state = cancelled ? State.CANCELLED : State.DONE;
+        } catch (RuntimeException | Error e) {
+            cancelled = true;
+            error = e.getMessage();
+            state = State.FAILED;
+            throw e;
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    private long[] scan() {
+        LongStream.Builder ids = LongStream.builder();
+        try (Transaction tx = db.beginTx();
+             ResourceIterator<Node> nodes = db.findNodes(Label.label(label))) {
+            while (nodes.hasNext() && !cancelled) {
+                ids.add(nodes.next().getId());
+            }
+            tx.success();
+        }
+        return ids.build().toArray();
+    }
+
+    private static void evictFinished() {
+        int excess = JOBS.size() - RETAINED_JOBS;
+        for (ReindexJob job : JOBS.values()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (job.endNanos != 0) {
+                JOBS.remove(job.id);
+                excess--;
+            }
+        }
+    }
+
+    public Progress progress() {
+        return new Progress(this);
+    }
+
+    /**
+     * Output record of the reindex procedures.
+     */
+    public static class Progress {
+        public long jobId;
+        public String label;
+        public String state;
+        public long total;
+        public long done;
+        public long writes;
+        public long millis;
+        public double nodesPerSecond;
+        public Long etaMillis;
+        public String error;
+
+        Progress(ReindexJob job) {
+            long end = job.endNanos != 0 ? job.endNanos : System.nanoTime();
+            long elapsed = end - job.startNanos;
+            this.jobId = job.id;
+            this.label = job.label;
+            this.state = job.state.name();
+            this.total = job.total;
+            this.done = job.done.get();
+            this.writes = job.writes.get();
+            this.millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            this.nodesPerSecond = elapsed == 0 ? 0 : done * 1e9 / elapsed;
+            // unknown while scanning or before the first batch committed
+            this.etaMillis = job.state == State.RUNNING && nodesPerSecond > 0
+                    ? (long) ((total - done) * 1000 / nodesPerSecond) : null;
+            this.error = job.error;
+        }
+    }
+}
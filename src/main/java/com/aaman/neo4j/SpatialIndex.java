@@ -0,0 +1,356 @@
+package com.aaman.neo4j;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Packed R-trees over the vertices and edges of a {@link GraphLayout}, for
+ * rectangle and point queries in O(log n + k) instead of a scan.
+ *
+ * The trees are bulk loaded once in sort-tile-recursive order and never
+ * change, since a layout doesn't. Vertices are points, edges are the bounding
+ * boxes of their straight segments; edge hits are checked against the segment
+ * itself before they are reported.
+ */
+public final class SpatialIndex {
+
+    /** How far from a point a vertex or edge still counts as under it, the radius SVG nodes are drawn with. */
+    static final double PICK_RADIUS = SvgWriter.RADIUS;
+
+    private final GraphLayout layout;
+    private final RTree vertices;
+    private final RTree edges;
+
+    SpatialIndex(GraphLayout layout) {
+        this.layout = layout;
+        CsrGraph graph = layout.graph;
+        int n = graph.vertexCount();
+        this.vertices = new RTree(n, layout.x, layout.y, layout.x, layout.y);
+        int m = graph.edgeCount();
+        double[] minX = new double[m];
+        double[] minY = new double[m];
+        double[] maxX = new double[m];
+        double[] maxY = new double[m];
+        for (int e = 0; e < m; e++) {
+            int s = graph.source(e);
+            int t = graph.target(e);
+            minX[e] = Math.min(layout.x[s], layout.x[t]);
+            minY[e] = Math.min(layout.y[s], layout.y[t]);
+            maxX[e] = Math.max(layout.x[s], layout.x[t]);
+            maxY[e] = Math.max(layout.y[s], layout.y[t]);
+        }
+        this.edges = new RTree(m, minX, minY, maxX, maxY);
+    }
+
+    /** Approximate heap taken by the index of a layout with this many vertices and edges. */
+    static long estimatedBytes(int vertexCount, int edgeCount) {
+        // 36 bytes per slot, and the inner levels add about one slot per RTree.NODE_SIZE - 1 items
+        return (vertexCount + edgeCount) * 36L * RTree.NODE_SIZE / (RTree.NODE_SIZE - 1);
+    }
+
+    /** Passes every vertex inside the rectangle, borders included, to {@code action}. */
+    public void vertices(double x1, double y1, double x2, double y2, IntConsumer action) {
+        vertices.search(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2), action);
+    }
+
+    /** Passes every edge whose segment crosses or lies in the rectangle to {@code action}. */
+    public void edges(double x1, double y1, double x2, double y2, IntConsumer action) {
+        double minX = Math.min(x1, x2);
+        double minY = Math.min(y1, y2);
+        double maxX = Math.max(x1, x2);
+        double maxY = Math.max(y1, y2);
+        CsrGraph graph = layout.graph;
+        edges.search(minX, minY, maxX, maxY, e -> {
+            int s = graph.source(e);
+            int t = graph.target(e);
+            if (crosses(layout.x[s], layout.y[s], layout.x[t], layout.y[t], minX, minY, maxX, maxY)) {
+                action.accept(e);
+            }
+        });
+    }
+
+    /**
+     * @return the vertex closest to (x, y) within {@link #PICK_RADIUS}, or -1 if there is none
+     */
+    public int vertexAt(double x, double y) {
+        double[] best = {PICK_RADIUS * PICK_RADIUS};
+        int[] found = {-1};
+        vertices.search(x - PICK_RADIUS, y - PICK_RADIUS, x + PICK_RADIUS, y + PICK_RADIUS, v -> {
+            double dx = layout.x[v] - x;
+            double dy = layout.y[v] - y;
+            double d2 = dx * dx + dy * dy;
+            if (d2 <= best[0]) {
+                best[0] = d2;
+                found[0] = v;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * @return the edge whose segment passes closest to (x, y) within {@link #PICK_RADIUS},
+     *         or -1 if there is none
+     */
+    public int edgeAt(double x, double y) {
+        CsrGraph graph = layout.graph;
+        double[] best = {PICK_RADIUS * PICK_RADIUS};
+        int[] found = {-1};
+        edges.search(x - PICK_RADIUS, y - PICK_RADIUS, x + PICK_RADIUS, y + PICK_RADIUS, e -> {
+            int s = graph.source(e);
+            int t = graph.target(e);
+            double d2 = segmentDistanceSquared(x, y, layout.x[s], layout.y[s], layout.x[t], layout.y[t]);
+            if (d2 <= best[0]) {
+                best[0] = d2;
+                found[0] = e;
+            }
+        });
+        return found[0];
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - x1) * dx + (py - y1) * dy) / length2));
+        double ux = px - (x1 + t * dx);
+        double uy = py - (y1 + t * dy);
+        return ux * ux + uy * uy;
+    }
+
+    // Liang-Barsky: clips the segment to the rectangle and checks that something is left
+    private static boolean crosses(double x1, double y1, double x2, double y2,
+                                   double minX, double minY, double maxX, double maxY) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {x1 - minX, maxX - x1, y1 - minY, maxY - y1};
+        double enter = 0;
+        double leave = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    enter = Math.max(enter, t);
+                } else {
+                    leave = Math.min(leave, t);
+                }
+            }
+        }
+        return enter <= leave;
+    }
+
+    /**
+     * Output record of the spatial procedures: a node at (x, y), or a relationship
+     * from (x, y) to (targetX, targetY).
+     */
+    public static class Item {
+        public String kind;
+        public long id;
+        public double x;
+        public double y;
+        public Double targetX;
+        public Double targetY;
+
+        static Item node(GraphLayout layout, int v) {
+            Item item = new Item();
+            item.kind = "node";
+            item.id = layout.graph.nodeId(v);
+            item.x = layout.x(v);
+            item.y = layout.y(v);
+            return item;
+        }
+
+        static Item relationship(GraphLayout layout, int e) {
+            CsrGraph graph = layout.graph;
+            Item item = new Item();
+            item.kind = "relationship";
+            item.id = graph.relationshipId(e);
+            item.x = layout.x(graph.source(e));
+            item.y = layout.y(graph.source(e));
+            item.targetX = layout.x(graph.target(e));
+            item.targetY = layout.y(graph.target(e));
+            return item;
+        }
+    }
+
+    /**
+     * A static R-tree packed into flat arrays, level by level from the leaves up.
+     * A slot holds a bounding box and, for leaves, the item it stands for or, for
+     * inner nodes, the slot of the first of its up to {@link #NODE_SIZE} children.
+     * Each level is tiled by x into vertical slices and by y within a slice
+     * before it is grouped into the parents of the next level.
+     */
+    static final class RTree {
+
+        static final int NODE_SIZE = 16;
+
+        private final double[] minX;
+        private final double[] minY;
+        private final double[] maxX;
+        private final double[] maxY;
+        private final int[] index;
+        /** Slot after the last one of each level, the leaves first. */
+        private final int[] levelEnd;
+
+        RTree(int count, double[] itemMinX, double[] itemMinY, double[] itemMaxX, double[] itemMaxY) {
+            int[] ends = new int[8];
+            int levels = 0;
+            int slots = 0;
+            int width = count;
+            do {
+                slots += width;
+                if (levels == ends.length) {
+                    ends = Arrays.copyOf(ends, levels * 2);
+                }
+                ends[levels++] = slots;
+                width = (width + NODE_SIZE - 1) / NODE_SIZE;
+            } while (width > 0 && ends[levels - 1] - (levels > 1 ? ends[levels - 2] : 0) > 1);
+            levelEnd = Arrays.copyOf(ends, levels);
+            minX = new double[slots];
+            minY = new double[slots];
+            maxX = new double[slots];
+            maxY = new double[slots];
+            index = new int[slots];
+
+            for (int i = 0; i < count; i++) {
+                minX[i] = itemMinX[i];
+                minY[i] = itemMinY[i];
+                maxX[i] = itemMaxX[i];
+                maxY[i] = itemMaxY[i];
+                index[i] = i;
+            }
+            for (int level = 0, start = 0; level < levels; start = levelEnd[level++]) {
+                int end = levelEnd[level];
+                tile(start, end);
+                if (level + 1 == levels) {
+                    break;
+                }
+                for (int first = start, parent = end; first < end; first += NODE_SIZE, parent++) {
+                    int last = Math.min(first + NODE_SIZE, end);
+                    minX[parent] = Double.POSITIVE_INFINITY;
+                    minY[parent] = Double.POSITIVE_INFINITY;
+                    maxX[parent] = Double.NEGATIVE_INFINITY;
+                    maxY[parent] = Double.NEGATIVE_INFINITY;
+                    for (int child = first; child < last; child++) {
+                        minX[parent] = Math.min(minX[parent], minX[child]);
+                        minY[parent] = Math.min(minY[parent], minY[child]);
+                        maxX[parent] = Math.max(maxX[parent], maxX[child]);
+                        maxY[parent] = Math.max(maxY[parent], maxY[child]);
+                    }
+                    index[parent] = first;
+                }
+            }
+        }
+
+        /** Reorders the slots of one level into sort-tile-recursive order. */
+        private void tile(int start, int end) {
+            int count = end - start;
+            if (count <= NODE_SIZE) {
+                return;
+            }
+            int[] order = new int[count];
+            double[] centreX = new double[count];
+            double[] centreY = new double[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = start + i;
+                centreX[i] = (minX[start + i] + maxX[start + i]) / 2;
+                centreY[i] = (minY[start + i] + maxY[start + i]) / 2;
+            }
+            sort(order, 0, count, centreX, start);
+            int nodes = (count + NODE_SIZE - 1) / NODE_SIZE;
+            int slice = NODE_SIZE * (int) Math.ceil(Math.sqrt(nodes));
+            for (int from = 0; from < count; from += slice) {
+                sort(order, from, Math.min(from + slice, count), centreY, start);
+            }
+            double[][] boxes = {minX, minY, maxX, maxY};
+            for (double[] box : boxes) {
+                double[] copy = Arrays.copyOfRange(box, start, end);
+                for (int i = 0; i < count; i++) {
+                    box[start + i] = copy[order[i] - start];
+                }
+            }
+            int[] copy = Arrays.copyOfRange(index, start, end);
+            for (int i = 0; i < count; i++) {
+                index[start + i] = copy[order[i] - start];
+            }
+        }
+
+        // quicksort of order[from, to) by key[slot - offset], insertion sort for short ranges
+        private static void sort(int[] order, int from, int to, double[] key, int offset) {
+            while (to - from > 16) {
+                int mid = (from + to) >>> 1;
+                double pivot = median(key[order[from] - offset], key[order[mid] - offset], key[order[to - 1] - offset]);
+                int i = from;
+                int j = to - 1;
+                while (i <= j) {
+                    while (key[order[i] - offset] < pivot) {
+                        i++;
+                    }
+                    while (key[order[j] - offset] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int swap = order[i];
+                        order[i++] = order[j];
+                        order[j--] = swap;
+                    }
+                }
+                // recurse into the smaller half so the stack stays O(log n)
+                if (j - from < to - i) {
+                    sort(order, from, j + 1, key, offset);
+                    from = i;
+                } else {
+                    sort(order, i, to, key, offset);
+                    to = j + 1;
+                }
+            }
+            for (int i = from + 1; i < to; i++) {
+                int value = order[i];
+                double k = key[value - offset];
+                int j = i - 1;
+                while (j >= from && key[order[j] - offset] > k) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = value;
+            }
+        }
+
+        private static double median(double a, double b, double c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+
+        /** Passes every item whose box meets the rectangle to {@code action}. */
+        void search(double x1, double y1, double x2, double y2, IntConsumer action) {
+            if (levelEnd[0] == 0) {
+                return;
+            }
+            // pairs of slot and level
+            int[] stack = new int[2 * NODE_SIZE * levelEnd.length + 2];
+            int top = 0;
+            stack[top++] = levelEnd[levelEnd.length - 1] - 1;
+            stack[top++] = levelEnd.length - 1;
+            while (top > 0) {
+                int level = stack[--top];
+                int slot = stack[--top];
+                if (maxX[slot] < x1 || maxY[slot] < y1 || minX[slot] > x2 || minY[slot] > y2) {
+                    continue;
+                }
+                if (level == 0) {
+                    action.accept(index[slot]);
+                    continue;
+                }
+                int first = index[slot];
+                int last = Math.min(first + NODE_SIZE, levelEnd[level - 1]);
+                for (int child = first; child < last; child++) {
+                    stack[top++] = child;
+                    stack[top++] = level - 1;
+                }
+            }
+        }
+    }
+}
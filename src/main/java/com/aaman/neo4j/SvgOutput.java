@@ -0,0 +1,99 @@
+package com.aaman.neo4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPOutputStream;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * How {@code getJungSVG} hands out the document, read from its options map:
+ * <ul>
+ *     <li>{@code encoding} - {@code base64} (default) or {@code raw} for the SVG text itself</li>
+ *     <li>{@code gzip} - compress the document first, only with Base64 or a file</li>
+ *     <li>{@code file} - write to this file below the import directory and return its path</li>
+ * </ul>
+ * The {@link SvgWriter} streams through the gzip and Base64 encoders into a
+ * byte buffer that is kept per thread and reused by the next render, so the only
+ * other copy of the output is the returned string.
+ */
+public final class SvgOutput {
+
+    /** Buffers that grew beyond this are dropped after use rather than kept for the thread. */
+    private static final int MAX_RETAINED = 8 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFERS =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(64 * 1024));
+
+    private final boolean base64;
+    private final boolean gzip;
+    private final String file;
+
+    private SvgOutput(boolean base64, boolean gzip, String file) {
+        this.base64 = base64;
+        this.gzip = gzip;
+        this.file = file;
+    }
+
+    public static SvgOutput from(Map<String,Object> options) {
+        String encoding = String.valueOf(options.getOrDefault("encoding", "base64")).toLowerCase();
+        if (!encoding.equals("base64") && !encoding.equals("raw")) {
+            throw new IllegalArgumentException("Unknown encoding '" + encoding + "', expected base64 or raw");
+        }
+        boolean gzip = Boolean.TRUE.equals(options.get("gzip"));
+        String file = (String) options.get("file");
+        if (gzip && file == null && encoding.equals("raw")) {
+            throw new IllegalArgumentException("gzip output is binary, use encoding 'base64' or a file");
+        }
+        return new SvgOutput(encoding.equals("base64"), gzip, file);
+    }
+
+    /**
+     * @return {@code null} when writing to a file, otherwise a name for the encoding
+     *         under which the rendered document can be cached
+     */
+    public String format() {
+        return file != null ? null : "svg:" + (base64 ? "base64" : "raw") + (gzip ? ":gzip" : "");
+    }
+
+    /**
+     * Writes the layout as configured.
+     *
+     * @return the encoded document, or the path of the file written
+     */
+    public String write(GraphLayout layout, IntFunction<String> captions, GraphDatabaseService db) throws IOException {
+        if (file != null) {
+            File target = ImportDirectory.resolve(db, file);
+            try (OutputStream out = compress(new BufferedOutputStream(new FileOutputStream(target)))) {
+                SvgWriter.write(layout, captions, out);
+            }
+            return target.getPath();
+        }
+        ByteArrayOutputStream buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            OutputStream out = base64 ? Base64.getEncoder().wrap(buffer) : buffer;
+            // closing the encoders writes the gzip trailer and the Base64 padding
+            try (OutputStream encoded = compress(out)) {
+                SvgWriter.write(layout, captions, encoded);
+            }
+            return buffer.toString(base64 ? StandardCharsets.US_ASCII.name() : StandardCharsets.UTF_8.name());
+        } finally {
+            if (buffer.size() > MAX_RETAINED) {
+                BUFFERS.remove();
+            }
+        }
+    }
+
+    private OutputStream compress(OutputStream out) throws IOException {
+        return gzip ? new GZIPOutputStream(out, 8192) : out;
+    }
+}
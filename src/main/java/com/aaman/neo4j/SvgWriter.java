@@ -0,0 +1,143 @@
+package com.aaman.neo4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.IntFunction;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a {@link GraphLayout} as an SVG document, element by element.
+ *
+ * Relationships become arrows that end at the edge of the target's circle and
+ * nodes become circles with a caption beside them; node and relationship ids
+ * are kept in {@code data-id} attributes and the types and captions in
+ * {@code title} elements, so browsers show them as tooltips. Nothing is held in
+ * memory beyond the XML writer's buffer and no AWT or Swing class is touched.
+ */
+public final class SvgWriter {
+
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newFactory();
+    private static final String SVG_NS = "http://www.w3.org/2000/svg";
+
+    static final double RADIUS = 8;
+    private static final double ARROW = 6;
+
+    private SvgWriter() {
+    }
+
+    /**
+     * Writes the layout to {@code out} as UTF-8, without closing it.
+     *
+     * @param captions the text next to each vertex
+     */
+    public static void write(GraphLayout layout, IntFunction<String> captions, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter svg = FACTORY.createXMLStreamWriter(out, "UTF-8");
+            svg.writeStartDocument("UTF-8", "1.0");
+            svg.writeStartElement("svg");
+            svg.writeDefaultNamespace(SVG_NS);
+            svg.writeAttribute("width", number(layout.width));
+            svg.writeAttribute("height", number(layout.height));
+            svg.writeAttribute("viewBox", "0 0 " + number(layout.width) + " " + number(layout.height));
+            writeArrowMarker(svg);
+            writeEdges(svg, layout);
+            writeVertices(svg, layout, captions);
+            svg.writeEndElement();
+            svg.writeEndDocument();
+            svg.flush();
+            svg.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write SVG", e);
+        }
+    }
+
+    private static void writeArrowMarker(XMLStreamWriter svg) throws XMLStreamException {
+        svg.writeStartElement("defs");
+        svg.writeStartElement("marker");
+        svg.writeAttribute("id", "arrow");
+        svg.writeAttribute("viewBox", "0 0 10 10");
+        svg.writeAttribute("refX", "10");
+        svg.writeAttribute("refY", "5");
+        svg.writeAttribute("markerUnits", "userSpaceOnUse");
+        svg.writeAttribute("markerWidth", number(ARROW));
+        svg.writeAttribute("markerHeight", number(ARROW));
+        svg.writeAttribute("orient", "auto");
+        svg.writeEmptyElement("path");
+        svg.writeAttribute("d", "M0,0L10,5L0,10z");
+        svg.writeEndElement();
+        svg.writeEndElement();
+    }
+
+    private static void writeEdges(XMLStreamWriter svg, GraphLayout layout) throws XMLStreamException {
+        CsrGraph graph = layout.graph;
+        svg.writeStartElement("g");
+        svg.writeAttribute("class", "edges");
+        svg.writeAttribute("stroke", "#000");
+        svg.writeAttribute("marker-end", "url(#arrow)");
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            double x1 = layout.x(graph.source(e));
+            double y1 = layout.y(graph.source(e));
+            double x2 = layout.x(graph.target(e));
+            double y2 = layout.y(graph.target(e));
+            // stop at the target's circle so the arrow head stays visible
+            double length = Math.hypot(x2 - x1, y2 - y1);
+            if (length > RADIUS) {
+                x2 -= (x2 - x1) * RADIUS / length;
+                y2 -= (y2 - y1) * RADIUS / length;
+            }
+            svg.writeStartElement("line");
+            svg.writeAttribute("data-id", Long.toString(graph.relationshipId(e)));
+            svg.writeAttribute("x1", number(x1));
+            svg.writeAttribute("y1", number(y1));
+            svg.writeAttribute("x2", number(x2));
+            svg.writeAttribute("y2", number(y2));
+            svg.writeStartElement("title");
+            svg.writeCharacters(graph.type(e));
+            svg.writeEndElement();
+            svg.writeEndElement();
+        }
+        svg.writeEndElement();
+    }
+
+    private static void writeVertices(XMLStreamWriter svg, GraphLayout layout, IntFunction<String> captions)
+            throws XMLStreamException {
+        CsrGraph graph = layout.graph;
+        svg.writeStartElement("g");
+        svg.writeAttribute("class", "nodes");
+        svg.writeAttribute("fill", "#f00");
+        svg.writeAttribute("stroke", "#000");
+        svg.writeAttribute("font-family", "sans-serif");
+        svg.writeAttribute("font-size", "12");
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            String caption = captions.apply(v);
+            svg.writeStartElement("g");
+            svg.writeAttribute("data-id", Long.toString(graph.nodeId(v)));
+            svg.writeStartElement("circle");
+            svg.writeAttribute("cx", number(layout.x(v)));
+            svg.writeAttribute("cy", number(layout.y(v)));
+            svg.writeAttribute("r", number(RADIUS));
+            svg.writeStartElement("title");
+            svg.writeCharacters(caption);
+            svg.writeEndElement();
+            svg.writeEndElement();
+            svg.writeStartElement("text");
+            svg.writeAttribute("x", number(layout.x(v) + RADIUS + 2));
+            svg.writeAttribute("y", number(layout.y(v) + 4));
+            svg.writeAttribute("fill", "#000");
+            svg.writeAttribute("stroke", "none");
+            svg.writeCharacters(caption);
+            svg.writeEndElement();
+            svg.writeEndElement();
+        }
+        svg.writeEndElement();
+    }
+
+    // one decimal is finer than a pixel and keeps the document small
+    private static String number(double value) {
+        long tenths = Math.round(value * 10);
+        return tenths % 10 == 0 ? Long.toString(tenths / 10) : Double.toString(tenths / 10.0);
+    }
+}
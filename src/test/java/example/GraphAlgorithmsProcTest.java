@@ -0,0 +1,227 @@
+package example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.driver.v1.*;
+import org.neo4j.harness.junit.Neo4jRule;
+
+import com.aaman.neo4j.GraphAlgorithmsProc;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class GraphAlgorithmsProcTest
+{
+    @Rule
+    public Neo4jRule neo4j = new Neo4jRule()
+            .withProcedure( GraphAlgorithmsProc.class );
+
+    @Test
+    public void shouldRankTheHubOfAStarHighest() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given everybody knows the hub
+            session.run( "CREATE (h:Person {name:'Hub'}) WITH h UNWIND range(1, 10) AS i CREATE (:Person {name:'Spoke' + i})-[:KNOWS]->(h)" );
+
+            // When I rank them on two threads
+            Map<String,Double> scores = new HashMap<>();
+            double total = 0;
+            for ( Record record : session.run( "CALL com.aaman.neo4j.pageRank('', {label:'Person', concurrency:2}) YIELD nodeId, score " +
+                    "MATCH (n) WHERE id(n) = nodeId RETURN n.name AS name, score" ).list() )
+            {
+                scores.put( record.get( "name" ).asString(), record.get( "score" ).asDouble() );
+                total += record.get( "score" ).asDouble();
+            }
+
+            // Then the hub comes first and the scores add up to one
+            assertThat( scores.size(), equalTo( 11 ) );
+            assertTrue( scores.get( "Hub" ) > 3 * scores.get( "Spoke1" ) );
+            assertTrue( Math.abs( total - 1 ) < 1e-6 );
+        }
+    }
+
+    @Test
+    public void shouldFindTheNodesBetweenTheOthers() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a chain a -> b -> c
+            session.run( "CREATE (:Person {name:'a'})-[:KNOWS]->(:Person {name:'b'})-[:KNOWS]->(:Person {name:'c'})" );
+
+            // When I compute betweenness
+            Map<String,Double> scores = new HashMap<>();
+            for ( Record record : session.run( "CALL com.aaman.neo4j.betweenness('MATCH p = (:Person)-[:KNOWS]->(:Person) RETURN p') YIELD nodeId, score " +
+                    "MATCH (n) WHERE id(n) = nodeId RETURN n.name AS name, score" ).list() )
+            {
+                scores.put( record.get( "name" ).asString(), record.get( "score" ).asDouble() );
+            }
+
+            // Then only the middle lies on a shortest path between others
+            assertThat( scores.get( "a" ), equalTo( 0.0 ) );
+            assertThat( scores.get( "b" ), equalTo( 1.0 ) );
+            assertThat( scores.get( "c" ), equalTo( 0.0 ) );
+        }
+    }
+
+    @Test
+    public void shouldWriteComponentsInBatches() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two separate pairs
+            session.run( "CREATE (:Person {name:'a'})-[:KNOWS]->(:Person {name:'b'}), (:Person {name:'c'})<-[:KNOWS]-(:Person {name:'d'})" );
+
+            // When I store their components two nodes per transaction
+            Record summary = session.run( "CALL com.aaman.neo4j.connectedComponents.write('', {label:'Person', batchSize:2})" ).single();
+
+            // Then every node got one and each pair shares its own
+            assertThat( summary.get( "nodes" ).asLong(), equalTo( 4L ) );
+            assertThat( summary.get( "batches" ).asLong(), equalTo( 2L ) );
+            Record components = session.run( "MATCH (a {name:'a'}), (b {name:'b'}), (c {name:'c'}), (d {name:'d'}) " +
+                    "RETURN a.component = b.component AS ab, c.component = d.component AS cd, a.component = c.component AS ac" ).single();
+            assertTrue( components.get( "ab" ).asBoolean() );
+            assertTrue( components.get( "cd" ).asBoolean() );
+            assertTrue( !components.get( "ac" ).asBoolean() );
+        }
+    }
+
+    @Test
+    public void shouldSplitTwoCliquesIntoTwoCommunities() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two groups of five who all know each other, with one link between the groups
+            session.run( "UNWIND ['a', 'b'] AS g UNWIND range(1, 5) AS i CREATE (:Person {group:g, name:g + i})" );
+            session.run( "MATCH (x:Person), (y:Person) WHERE x.group = y.group AND x.name < y.name CREATE (x)-[:KNOWS]->(y)" );
+            session.run( "MATCH (x:Person {name:'a1'}), (y:Person {name:'b1'}) CREATE (x)-[:KNOWS]->(y)" );
+
+            for ( String algorithm : new String[] {"louvain", "labelPropagation"} )
+            {
+                // When I detect communities
+                Map<String,Long> communities = new HashMap<>();
+                for ( Record record : session.run( "CALL com.aaman.neo4j.communities('', {label:'Person', algorithm:{algorithm}, concurrency:2}) " +
+                        "YIELD nodeId, communityId MATCH (n) WHERE id(n) = nodeId RETURN n.name AS name, communityId",
+                        Values.parameters( "algorithm", algorithm ) ).list() )
+                {
+                    communities.put( record.get( "name" ).asString(), record.get( "communityId" ).asLong() );
+                }
+
+                // Then each group is a community of its own
+                for ( int i = 2; i <= 5; i++ )
+                {
+                    assertThat( algorithm, communities.get( "a" + i ), equalTo( communities.get( "a1" ) ) );
+                    assertThat( algorithm, communities.get( "b" + i ), equalTo( communities.get( "b1" ) ) );
+                }
+                assertTrue( algorithm, !communities.get( "a1" ).equals( communities.get( "b1" ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepTheHubOfAStarWithItsLeaves() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a hub known by four people, and a pair apart, named after the order they were created in
+            session.run( "CREATE (h:Person {name:'Hub'}) WITH h UNWIND range(1, 4) AS i CREATE (:Person {name:'Leaf' + i})-[:KNOWS]->(h)" );
+            session.run( "CREATE (:Person {name:'Pair1'})-[:KNOWS]->(:Person {name:'Pair2'})" );
+
+            // When I propagate labels, loading the people in reverse
+            Map<String,Long> communities = communities( session,
+                    "CALL com.aaman.neo4j.communities('MATCH (n:Person) OPTIONAL MATCH (n)-[r:KNOWS]-() RETURN n, r ORDER BY n.name DESC', " +
+                    "{algorithm:'labelPropagation'}) YIELD nodeId, communityId " +
+                    "MATCH (n) WHERE id(n) = nodeId RETURN n.name AS name, communityId" );
+
+            // Then the star is one community named by the hub, the lowest node id, and the pair another
+            long hub = session.run( "MATCH (n:Person {name:'Hub'}) RETURN id(n)" ).single().get( 0 ).asLong();
+            assertThat( communities.get( "Hub" ), equalTo( hub ) );
+            for ( int i = 1; i <= 4; i++ )
+            {
+                assertThat( communities.get( "Leaf" + i ), equalTo( hub ) );
+            }
+            assertThat( communities.get( "Pair2" ), equalTo( communities.get( "Pair1" ) ) );
+            assertTrue( !communities.get( "Pair1" ).equals( hub ) );
+        }
+    }
+
+    @Test
+    public void shouldPropagateLabelsOnSeveralThreads() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a hundred stars of six people, enough to split a sweep across threads
+            session.run( "UNWIND range(1, 100) AS s CREATE (h:Person {star:s, name:'Hub'}) " +
+                    "WITH h, s UNWIND range(1, 5) AS i CREATE (:Person {star:s, name:'Leaf' + i})-[:KNOWS]->(h)" );
+
+            // When I propagate labels on four threads
+            Record stars = session.run( "CALL com.aaman.neo4j.communities('', {label:'Person', algorithm:'labelPropagation', concurrency:4}) " +
+                    "YIELD nodeId, communityId MATCH (n) WHERE id(n) = nodeId " +
+                    "WITH n.star AS star, collect(DISTINCT communityId) AS communities " +
+                    "MATCH (h:Person {star:star, name:'Hub'}) " +
+                    "RETURN count(*) AS stars, sum(CASE WHEN communities = [id(h)] THEN 1 ELSE 0 END) AS namedByHub" ).single();
+
+            // Then every star is one community, named by its hub
+            assertThat( stars.get( "stars" ).asLong(), equalTo( 100L ) );
+            assertThat( stars.get( "namedByHub" ).asLong(), equalTo( 100L ) );
+        }
+    }
+
+    @Test
+    public void shouldGroupMoviesWithTheirCasts() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two Matrix movies with the same cast of three, and Top Gun with another cast of three
+            session.run( "CREATE (m1:Movie {name:'The Matrix'}), (m2:Movie {name:'The Matrix Reloaded'}), (t:Movie {name:'Top Gun'}) " +
+                    "FOREACH (name IN ['Keanu', 'Carrie', 'Laurence'] | CREATE (p:Person {name:name}) CREATE (p)-[:ACTED_IN]->(m1), (p)-[:ACTED_IN]->(m2)) " +
+                    "FOREACH (name IN ['Tom', 'Kelly', 'Val'] | CREATE (:Person {name:name})-[:ACTED_IN]->(t))" );
+
+            // When I propagate labels over who acted in what
+            Map<String,Long> communities = communities( session,
+                    "CALL com.aaman.neo4j.communities('MATCH p = (:Person)-[:ACTED_IN]->(:Movie) RETURN p', {algorithm:'labelPropagation'}) " +
+                    "YIELD nodeId, communityId MATCH (n) WHERE id(n) = nodeId RETURN n.name AS name, communityId" );
+
+            // Then each movie is in one community with its actors, named by its lowest node id
+            long matrix = session.run( "MATCH (n) WHERE n.name STARTS WITH 'The Matrix' OR n.name IN ['Keanu', 'Carrie', 'Laurence'] " +
+                    "RETURN min(id(n))" ).single().get( 0 ).asLong();
+            long topGun = session.run( "MATCH (n) WHERE n.name IN ['Top Gun', 'Tom', 'Kelly', 'Val'] RETURN min(id(n))" ).single().get( 0 ).asLong();
+            for ( String name : new String[] {"The Matrix", "The Matrix Reloaded", "Keanu", "Carrie", "Laurence"} )
+            {
+                assertThat( name, communities.get( name ), equalTo( matrix ) );
+            }
+            for ( String name : new String[] {"Top Gun", "Tom", "Kelly", "Val"} )
+            {
+                assertThat( name, communities.get( name ), equalTo( topGun ) );
+            }
+        }
+    }
+
+    private static Map<String,Long> communities( Session session, String query )
+    {
+        Map<String,Long> communities = new HashMap<>();
+        for ( Record record : session.run( query ).list() )
+        {
+            communities.put( record.get( "name" ).asString(), record.get( "communityId" ).asLong() );
+        }
+        return communities;
+    }
+}
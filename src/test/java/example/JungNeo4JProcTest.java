@@ -0,0 +1,391 @@
+package example;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.driver.v1.*;
+import org.neo4j.driver.v1.exceptions.ClientException;
+import org.neo4j.harness.junit.Neo4jRule;
+
+import com.aaman.neo4j.JungNeo4JProc;
+import com.aaman.neo4j.MetricsProc;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+@SuppressWarnings("unchecked")
+public class JungNeo4JProcTest
+{
+    @Rule
+    public Neo4jRule neo4j = new Neo4jRule()
+            .withFunction( JungNeo4JProc.class )
+            .withProcedure( JungNeo4JProc.class )
+            .withProcedure( MetricsProc.class );
+
+    @Test
+    public void shouldLayOutAProjectionInsideTheFrame() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a ring of people
+            session.run( "UNWIND range(0, 19) AS i CREATE (:Person {name:'P' + i})" );
+            session.run( "MATCH (a:Person), (b:Person) WHERE toInteger(substring(b.name, 1)) = (toInteger(substring(a.name, 1)) + 1) % 20 " +
+                    "CREATE (a)-[:KNOWS]->(b)" );
+
+            for ( String layout : new String[] {"fr", "isom", "spring", "circle"} )
+            {
+                // When I lay it out with each engine on two threads
+                String json = session.run( "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', layout:{layout}, threads:2})",
+                        Values.parameters( "layout", layout ) ).single().get( 0 ).asString();
+
+                // Then every node and relationship is there, placed within the frame
+                Map<String,Object> graph = new ObjectMapper().readValue( json, Map.class );
+                List<Map<String,Object>> nodes = (List<Map<String,Object>>) graph.get( "nodes" );
+                assertThat( nodes.size(), equalTo( 20 ) );
+                assertThat( ((List<?>) graph.get( "edges" )).size(), equalTo( 20 ) );
+                for ( Map<String,Object> node : nodes )
+                {
+                    double x = ((Number) node.get( "x" )).doubleValue();
+                    double y = ((Number) node.get( "y" )).doubleValue();
+                    assertTrue( layout + " placed " + node, x >= 0 && x <= 800 && y >= 0 && y <= 800 );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldRenderSvgWithoutAViewer() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a movie and its actor
+            session.run( "CREATE (:Person {name:'Keanu & co'})-[:ACTED_IN]->(:Movie {title:'The Matrix'})" );
+
+            // When I render the pair as SVG
+            String encoded = session.run( "RETURN com.aaman.neo4j.getJungSVG('MATCH p = ()-[:ACTED_IN]->() RETURN p')" )
+                    .single().get( 0 ).asString();
+
+            // Then I get a real document with a circle per node and an escaped caption
+            String svg = new String( Base64.getDecoder().decode( encoded ), StandardCharsets.UTF_8 );
+            assertTrue( svg, svg.contains( "<svg" ) && svg.endsWith( "</svg>" ) );
+            assertThat( svg.split( "<circle" ).length - 1, equalTo( 2 ) );
+            assertTrue( svg, svg.contains( ">Keanu &amp; co<" ) && svg.contains( ">ACTED_IN<" ) );
+        }
+    }
+
+    @Test
+    public void shouldReturnRawOrCompressedSvg() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            session.run( "CREATE (:Person {name:'Ann'})-[:KNOWS]->(:Person {name:'Bob'})" );
+
+            // When I ask for the plain text and for a gzipped copy of the same layout
+            String raw = session.run( "RETURN com.aaman.neo4j.getJungSVG('MATCH p = ()-->() RETURN p', {encoding:'raw'})" )
+                    .single().get( 0 ).asString();
+            String gzipped = session.run( "RETURN com.aaman.neo4j.getJungSVG('MATCH p = ()-->() RETURN p', {gzip:true})" )
+                    .single().get( 0 ).asString();
+
+            // Then both hold the same document
+            try ( InputStream in = new GZIPInputStream( new ByteArrayInputStream( Base64.getDecoder().decode( gzipped ) ) );
+                  Scanner scanner = new Scanner( in, "UTF-8" ).useDelimiter( "\\A" ) )
+            {
+                assertThat( scanner.next(), equalTo( raw ) );
+            }
+            assertTrue( raw, raw.startsWith( "<?xml" ) && raw.contains( ">Ann<" ) );
+        }
+    }
+
+    @Test
+    public void shouldServeRepeatedLayoutsFromTheCacheUntilTheGraphChanges() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            session.run( "CREATE (:Person {name:'Ann'})-[:KNOWS]->(:Person {name:'Bob'})" );
+            String query = "RETURN com.aaman.neo4j.getJungJSON('MATCH p = (:Person)-[:KNOWS]->() RETURN p')";
+
+            // When the same layout is asked for twice
+            String first = session.run( query ).single().get( 0 ).asString();
+            String second = session.run( query ).single().get( 0 ).asString();
+
+            // Then the second call is a hit with the same result
+            assertThat( second, equalTo( first ) );
+            Record stats = session.run( "CALL com.aaman.neo4j.layoutCacheStats()" ).single();
+            assertThat( stats.get( "hits" ).asLong(), equalTo( 1L ) );
+            assertThat( stats.get( "entries" ).asLong(), equalTo( 1L ) );
+
+            // And a change to a Person drops the entry
+            session.run( "MATCH (p:Person {name:'Ann'}) SET p.name = 'Anne'" );
+            assertThat( session.run( "CALL com.aaman.neo4j.layoutCacheStats()" ).single().get( "entries" ).asLong(), equalTo( 0L ) );
+            String third = session.run( query ).single().get( 0 ).asString();
+            assertTrue( third, third.contains( "Anne" ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepCachedLayoutsWhenOtherLabelsChange() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            session.run( "CREATE (:Person {name:'Ann'})-[:KNOWS]->(:Person {name:'Bob'})" );
+            session.run( "RETURN com.aaman.neo4j.getJungJSON('MATCH p = (:Person)-[:KNOWS]->(:Person) RETURN p')" ).consume();
+            session.run( "RETURN com.aaman.neo4j.getJungJSON('MATCH p = (:Person)-[:KNOWS]->() RETURN p')" ).consume();
+
+            // When a node of another label changes
+            session.run( "CREATE (:Movie {title:'Up'})" );
+
+            // Then only the layout of the query with an unlabelled node is dropped
+            assertThat( session.run( "CALL com.aaman.neo4j.layoutCacheStats()" ).single().get( "entries" ).asLong(), equalTo( 1L ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepKnownNodesInPlaceWhenSeeded() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a laid out star
+            session.run( "CREATE (c:Person {name:'Centre'}) WITH c UNWIND range(1, 5) AS i CREATE (c)-[:KNOWS]->(:Person {name:'Leaf' + i})" );
+            String query = "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', seedLayout:{seed}})";
+            Map<String,Object> before = new ObjectMapper().readValue( session.run(
+                    "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person'})" ).single().get( 0 ).asString(), Map.class );
+
+            // When a leaf is added and the star is laid out again from the first layout
+            session.run( "MATCH (c:Person {name:'Leaf1'}) CREATE (c)-[:KNOWS]->(:Person {name:'Leaf6'})" );
+            Map<String,Object> after = new ObjectMapper().readValue( session.run( query,
+                    Values.parameters( "seed", before.get( "layoutId" ) ) ).single().get( 0 ).asString(), Map.class );
+
+            // Then the nodes whose relationships did not change stay where they were
+            Map<Object,Map<String,Object>> old = new java.util.HashMap<>();
+            for ( Map<String,Object> node : (List<Map<String,Object>>) before.get( "nodes" ) )
+            {
+                old.put( node.get( "name" ), node );
+            }
+            List<Map<String,Object>> nodes = (List<Map<String,Object>>) after.get( "nodes" );
+            assertThat( nodes.size(), equalTo( 7 ) );
+            for ( Map<String,Object> node : nodes )
+            {
+                if ( !node.get( "name" ).equals( "Leaf1" ) && !node.get( "name" ).equals( "Leaf6" ) )
+                {
+                    assertThat( node.get( "x" ), equalTo( old.get( node.get( "name" ) ).get( "x" ) ) );
+                    assertThat( node.get( "y" ), equalTo( old.get( node.get( "name" ) ).get( "y" ) ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldCollapseDenseRegionsIntoClustersWhenZoomedOut() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a ring of 500 people
+            session.run( "UNWIND range(0, 499) AS i CREATE (:Person {name:'P' + i})" );
+            session.run( "MATCH (a:Person), (b:Person) WHERE toInteger(substring(b.name, 1)) = (toInteger(substring(a.name, 1)) + 1) % 500 " +
+                    "CREATE (a)-[:KNOWS]->(b)" );
+
+            // When I look at the whole frame zoomed out so far that it is a single cell
+            Map<String,Object> graph = new ObjectMapper().readValue( session.run(
+                    "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', layout:'circle', viewport:[0, 0, 800, 800], zoom:0.05})" )
+                    .single().get( 0 ).asString(), Map.class );
+
+            // Then everybody is folded into one cluster holding all the relationships
+            List<Map<String,Object>> clusters = (List<Map<String,Object>>) graph.get( "clusters" );
+            assertThat( ((List<?>) graph.get( "nodes" )).size(), equalTo( 0 ) );
+            assertThat( clusters.size(), equalTo( 1 ) );
+            assertThat( clusters.get( 0 ).get( "size" ), equalTo( (Object) 500 ) );
+            assertThat( clusters.get( 0 ).get( "edges" ), equalTo( (Object) 500 ) );
+            assertThat( ((List<?>) graph.get( "edges" )).size(), equalTo( 0 ) );
+
+            // And zoomed in on a corner, only what is inside it is returned
+            Map<String,Object> corner = new ObjectMapper().readValue( session.run(
+                    "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', layout:'circle', viewport:[0, 0, 100, 100], zoom:1})" )
+                    .single().get( 0 ).asString(), Map.class );
+            assertTrue( ((List<?>) corner.get( "nodes" )).size() + ((List<?>) corner.get( "clusters" )).size() <= 9 );
+        }
+    }
+
+    @Test
+    public void shouldFindWhatIsInARectangleOrUnderAPoint() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a laid out ring of people
+            session.run( "UNWIND range(0, 19) AS i CREATE (:Person {name:'P' + i})" );
+            session.run( "MATCH (a:Person), (b:Person) WHERE toInteger(substring(b.name, 1)) = (toInteger(substring(a.name, 1)) + 1) % 20 " +
+                    "CREATE (a)-[:KNOWS]->(b)" );
+            Map<String,Object> graph = new ObjectMapper().readValue( session.run(
+                    "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', layout:'circle'})" ).single().get( 0 ).asString(), Map.class );
+            Object layoutId = graph.get( "layoutId" );
+            Map<String,Object> node = ((List<Map<String,Object>>) graph.get( "nodes" )).get( 0 );
+
+            // When I ask for the whole frame
+            List<Record> all = session.run( "CALL com.aaman.neo4j.layoutViewport({id}, 0, 0, 800, 800)",
+                    Values.parameters( "id", layoutId ) ).list();
+
+            // Then every node and relationship is in it
+            assertThat( all.size(), equalTo( 40 ) );
+
+            // And a point on a node picks that node
+            Record picked = session.run( "CALL com.aaman.neo4j.layoutPick({id}, {x}, {y})",
+                    Values.parameters( "id", layoutId, "x", node.get( "x" ), "y", node.get( "y" ) ) ).single();
+            assertThat( picked.get( "kind" ).asString(), equalTo( "node" ) );
+            assertThat( picked.get( "id" ).asLong(), equalTo( ((Number) node.get( "id" )).longValue() ) );
+
+            // And a point in the middle of the ring picks nothing
+            assertTrue( session.run( "CALL com.aaman.neo4j.layoutPick({id}, 400, 400)",
+                    Values.parameters( "id", layoutId ) ).list().isEmpty() );
+        }
+    }
+
+    @Test
+    public void shouldStoreCoordinatesAndScoresInBatches() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a chain of five people
+            session.run( "UNWIND range(0, 4) AS i CREATE (:Person {name:'P' + i})" );
+            session.run( "MATCH (a:Person), (b:Person) WHERE toInteger(substring(b.name, 1)) = toInteger(substring(a.name, 1)) + 1 " +
+                    "CREATE (a)-[:KNOWS]->(b)" );
+
+            // When I store their layout and components two nodes per transaction
+            Record summary = session.run( "CALL com.aaman.neo4j.layoutAndStore('', {label:'Person', xProp:'px', yProp:'py', scores:['component'], batchSize:2})" ).single();
+
+            // Then every node has its coordinates and the component it shares with the others
+            assertThat( summary.get( "nodes" ).asLong(), equalTo( 5L ) );
+            assertThat( summary.get( "batches" ).asLong(), equalTo( 3L ) );
+            assertThat( summary.get( "writes" ).asLong(), equalTo( 15L ) );
+            Record stored = session.run( "MATCH (n:Person) RETURN count(n.px) AS xs, count(n.py) AS ys, count(DISTINCT n.component) AS components" ).single();
+            assertThat( stored.get( "xs" ).asLong(), equalTo( 5L ) );
+            assertThat( stored.get( "ys" ).asLong(), equalTo( 5L ) );
+            assertThat( stored.get( "components" ).asLong(), equalTo( 1L ) );
+        }
+    }
+
+    @Test
+    public void shouldRefuseToStoreTheLayoutOfCommunities() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            session.run( "CREATE (:Person {name:'Ann'})-[:KNOWS]->(:Person {name:'Bob'})" );
+            try
+            {
+                session.run( "CALL com.aaman.neo4j.layoutAndStore('', {label:'Person', communities:'labelPropagation'})" ).consume();
+                fail( "communities should be rejected" );
+            }
+            catch ( ClientException e )
+            {
+                assertTrue( e.getMessage(), e.getMessage().contains( "communities" ) );
+            }
+            assertThat( session.run( "MATCH (n:Person) RETURN count(n.x)" ).single().get( 0 ).asLong(), equalTo( 0L ) );
+        }
+    }
+
+    @Test
+    public void shouldLayOutOneNodePerCommunity() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two groups of five who all know each other, with one link between the groups
+            session.run( "UNWIND ['a', 'b'] AS g UNWIND range(1, 5) AS i CREATE (:Person {group:g, name:g + i})" );
+            session.run( "MATCH (x:Person), (y:Person) WHERE x.group = y.group AND x.name < y.name CREATE (x)-[:KNOWS]->(y)" );
+            session.run( "MATCH (x:Person {name:'a1'}), (y:Person {name:'b1'}) CREATE (x)-[:KNOWS]->(y)" );
+
+            // When I lay out their communities
+            Map<String,Object> graph = new ObjectMapper().readValue( session.run(
+                    "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', communities:'louvain'})" ).single().get( 0 ).asString(), Map.class );
+
+            // Then each group is one node, joined by the single link
+            List<Map<String,Object>> nodes = (List<Map<String,Object>>) graph.get( "nodes" );
+            List<Map<String,Object>> edges = (List<Map<String,Object>>) graph.get( "edges" );
+            assertThat( nodes.size(), equalTo( 2 ) );
+            assertThat( nodes.get( 0 ).get( "size" ), equalTo( (Object) 5 ) );
+            assertThat( nodes.get( 1 ).get( "size" ), equalTo( (Object) 5 ) );
+            assertThat( edges.size(), equalTo( 1 ) );
+            assertThat( edges.get( 0 ).get( "count" ), equalTo( (Object) 1 ) );
+        }
+    }
+
+    @Test
+    public void shouldReportTheLatencyOfEveryPhase() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a movie and its actor, and no metrics recorded so far
+            session.run( "CREATE (:Person {name:'Keanu'})-[:ACTED_IN]->(:Movie {title:'The Matrix'})" );
+            session.run( "CALL com.aaman.neo4j.stats({reset:true})" ).consume();
+
+            // When I lay them out twice without the cache
+            for ( int i = 0; i < 2; i++ )
+            {
+                session.run( "RETURN com.aaman.neo4j.getJungJSON('MATCH p = ()-[:ACTED_IN]->() RETURN p', {cache:false})" ).consume();
+            }
+
+            // Then every phase of both calls is counted
+            Map<String,Record> phases = new HashMap<>();
+            for ( Record record : session.run( "CALL com.aaman.neo4j.stats() YIELD operation, phase, count, p50Millis, p99Millis, maxMillis " +
+                    "WHERE operation = 'getJungJSON' RETURN phase, count, p50Millis, p99Millis, maxMillis" ).list() )
+            {
+                phases.put( record.get( "phase" ).asString(), record );
+            }
+            for ( String phase : new String[] {"cypher", "build", "layout", "cache", "render", "total"} )
+            {
+                Record record = phases.get( phase );
+                assertThat( phase, record.get( "count" ).asLong(), equalTo( 2L ) );
+                assertTrue( phase, record.get( "p50Millis" ).asDouble() <= record.get( "p99Millis" ).asDouble() );
+                assertTrue( phase, record.get( "p99Millis" ).asDouble() <= record.get( "maxMillis" ).asDouble() );
+            }
+
+            // And a reset forgets them
+            session.run( "CALL com.aaman.neo4j.stats({reset:true, jmx:true})" ).consume();
+            assertThat( session.run( "CALL com.aaman.neo4j.stats() YIELD operation RETURN count(*)" ).single().get( 0 ).asLong(), equalTo( 0L ) );
+        }
+    }
+
+    @Test( expected = ClientException.class )
+    public void shouldRejectAnUnknownLayout() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            session.run( "CREATE (:Person {name:'A'})" );
+            session.run( "RETURN com.aaman.neo4j.getJungJSON('', {label:'Person', layout:'grid'})" ).consume();
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package example;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.neo4j.driver.v1.*;
+import org.neo4j.driver.v1.exceptions.ClientException;
 import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.harness.junit.Neo4jRule;
 
 import com.aaman.neo4j.FullTextIndex;
+import com.aaman.neo4j.MetricsProc;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.neo4j.driver.v1.Values.parameters;
 @SuppressWarnings("unused")
 public class LegacyFullTextIndexTest
@@ -19,7 +31,9 @@ public class LegacyFullTextIndexTest
     public Neo4jRule neo4j = new Neo4jRule()
 
             // This is the Procedure we want to test
-            .withProcedure( FullTextIndex.class );
+            .withProcedure( FullTextIndex.class )
+            .withProcedure( MetricsProc.class )
+            .withConfig( GraphDatabaseSettings.load_csv_file_url_root, "import" );
 
     @Test
     public void shouldAllowIndexingAndFindingANode() throws Throwable
@@ -44,4 +58,512 @@ public class LegacyFullTextIndexTest
             assertThat( result.single().get( "nodeId" ).asLong(), equalTo( nodeId ) );
         }
     }
+
+    @Test
+    public void shouldSearchInReadOnlyTransactions() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session( AccessMode.READ ) )
+        {
+            // Given an indexed node
+            long nodeId = session.writeTransaction( tx -> tx.run( "CREATE (p:User {name:'Brookreson'}) RETURN id(p)" )
+                    .single().get( 0 ).asLong() );
+            session.writeTransaction( tx -> tx.run( "CALL com.aaman.neo4j.index({id}, ['name'])", parameters( "id", nodeId ) ).consume() );
+
+            // When I search in read transactions, also a label that has no index and must not get one
+            long found = session.readTransaction( tx -> tx.run( "CALL com.aaman.neo4j.search('User', 'name:Brook*')" )
+                    .single().get( "nodeId" ).asLong() );
+            int missing = session.readTransaction( tx -> tx.run( "CALL com.aaman.neo4j.search('Missing', 'name:Brook*')" ).list().size() );
+
+            // Then the hits come back without needing write access
+            assertThat( found, equalTo( nodeId ) );
+            assertThat( missing, equalTo( 0 ) );
+        }
+    }
+
+    @Test
+    public void shouldCountIndexingAndSearches() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given an indexed node, and no metrics recorded so far
+            long nodeId = session.run( "CREATE (p:User {name:'Brookreson'}) RETURN id(p)" ).single().get( 0 ).asLong();
+            session.run( "CALL com.aaman.neo4j.stats({reset:true})" ).consume();
+            session.run( "CALL com.aaman.neo4j.index({id}, ['name'])", parameters( "id", nodeId ) ).consume();
+
+            // When I search for it twice
+            for ( int i = 0; i < 2; i++ )
+            {
+                assertThat( session.run( "CALL com.aaman.neo4j.search('User', 'name:Brook*')" ).single().get( "nodeId" ).asLong(),
+                        equalTo( nodeId ) );
+            }
+
+            // Then the index lookups are counted, and so are the whole searches once their hits were read
+            Map<String,Long> counts = new HashMap<>();
+            for ( Record record : session.run( "CALL com.aaman.neo4j.stats() YIELD operation, phase, count " +
+                    "RETURN operation + '.' + phase AS name, count" ).list() )
+            {
+                counts.put( record.get( "name" ).asString(), record.get( "count" ).asLong() );
+            }
+            assertThat( counts.get( "index.total" ), equalTo( 1L ) );
+            assertThat( counts.get( "search.query" ), equalTo( 2L ) );
+            assertThat( counts.get( "search.total" ), equalTo( 2L ) );
+        }
+    }
+
+    @Test
+    public void shouldIndexNodesInBatches() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a few nodes with the same label
+            session.run( "UNWIND range(1, 25) AS i CREATE (:User {name:'Brook' + i})" );
+
+            // When I index all of them by label, three per transaction
+            Record stats = session.run( "CALL com.aaman.neo4j.indexBatch('User', ['name'], 3)" ).single();
+
+            // Then every node was indexed in as many batches as needed
+            assertThat( stats.get( "nodes" ).asLong(), equalTo( 25L ) );
+            assertThat( stats.get( "batches" ).asLong(), equalTo( 9L ) );
+            assertThat( session.run( "CALL com.aaman.neo4j.search('User', 'name:Brook*') YIELD nodeId RETURN count(*)" )
+                    .single().get( 0 ).asLong(), equalTo( 25L ) );
+        }
+    }
+
+    @Test
+    public void shouldPageThroughScoredHits() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given ten indexed nodes
+            session.run( "UNWIND range(1, 10) AS i CREATE (:User {name:'Brook' + i})" );
+            session.run( "CALL com.aaman.neo4j.indexBatch('User', ['name'], 100)" );
+
+            // When I ask for the second page of three hits sorted by name
+            List<Record> hits = session.run( "CALL com.aaman.neo4j.search('User', 'name:Brook*', {skip: 3, limit: 3, sort: 'name'}) " +
+                    "YIELD nodeId MATCH (n) WHERE id(n) = nodeId RETURN n.name AS name" ).list();
+
+            // Then only that page comes back, in order
+            assertThat( hits.size(), equalTo( 3 ) );
+            assertThat( hits.get( 0 ).get( "name" ).asString(), equalTo( "Brook3" ) );
+            assertThat( hits.get( 2 ).get( "name" ).asString(), equalTo( "Brook5" ) );
+
+            // And ranking by relevance reports a score per hit
+            Record top = session.run( "CALL com.aaman.neo4j.search('User', 'name:Brook1', {limit: 1})" ).single();
+            assertThat( top.get( "score" ).asDouble() > 0, equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void shouldSearchAcrossLabelsOnce() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a person, a movie and a node that is both, all indexed by name
+            session.run( "CREATE (:Person {name:'Brook'}), (:Movie {name:'Brooklyn'}), (:Person:Movie {name:'Brooks'})" );
+            session.run( "CALL com.aaman.neo4j.indexBatch('Person', ['name'], 100)" );
+            session.run( "CALL com.aaman.neo4j.indexBatch('Movie', ['name'], 100)" );
+
+            // When I search both labels at once
+            List<Record> hits = session.run( "CALL com.aaman.neo4j.searchMany(['Person', 'Movie', 'Missing'], 'name:Brook*', 10)" ).list();
+
+            // Then every node is found exactly once
+            assertThat( hits.size(), equalTo( 3 ) );
+        }
+    }
+
+    @Test
+    public void shouldExportQueryResultAsJsonChunks() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a few movies
+            session.run( "UNWIND range(1, 50) AS i CREATE (:Movie {title:'Movie' + i, released:i})" );
+
+            // When I export them in small chunks
+            List<Record> chunks = session.run( "CALL com.aaman.neo4j.CyphertoJSON(" +
+                    "'MATCH (m:Movie) WHERE m.released <= $max RETURN m.title AS title, m.released AS released ORDER BY released', " +
+                    "{max: 2}, {chunkSize: 16})" ).list();
+
+            // Then the chunks add up to one JSON array of the rows
+            StringBuilder json = new StringBuilder();
+            for ( Record chunk : chunks )
+            {
+                json.append( chunk.get( "value" ).asString() );
+            }
+            assertThat( chunks.size() > 1, equalTo( true ) );
+            assertThat( json.toString(), equalTo( "[{\"title\":\"Movie1\",\"released\":1},{\"title\":\"Movie2\",\"released\":2}]" ) );
+        }
+    }
+
+    @Test
+    public void shouldExportEntitiesOncePerResponse() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given one movie with two actors
+            session.run( "CREATE (m:Movie {title:'Movie'}), (:Person {name:'A'})-[:ACTED_IN]->(m), (:Person {name:'B'})-[:ACTED_IN]->(m)" );
+
+            // When I export both rows, which share the movie
+            String json = session.run( "CALL com.aaman.neo4j.CyphertoJSON('MATCH (p:Person)-[r:ACTED_IN]->(m) RETURN m ORDER BY p.name')" )
+                    .single().get( "value" ).asString();
+
+            // Then the movie is written in full once and as a reference after that
+            assertThat( json.matches( "\\[\\{\"m\":\\{\"id\":\\d+,\"labels\":\\[\"Movie\"],\"properties\":\\{\"title\":\"Movie\"}}},\\{\"m\":\\{\"id\":\\d+}}]" ),
+                    equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void shouldNotOverwriteAnExportedFileUnlessAsked() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a movie exported to a file
+            session.run( "CREATE (:Movie {title:'Up'})" );
+            String export = "CALL com.aaman.neo4j.CyphertoJSON('MATCH (m:Movie) RETURN m.title AS title', {}, {file: 'movies.json', overwrite: {overwrite}})";
+            String file = session.run( export, parameters( "overwrite", false ) ).single().get( "file" ).asString();
+
+            // When another movie is exported to the same file
+            session.run( "CREATE (:Movie {title:'Heat'})" );
+            try
+            {
+                session.run( export, parameters( "overwrite", false ) ).consume();
+                fail( "an existing file should not be overwritten" );
+            }
+            catch ( ClientException e )
+            {
+                // Then it fails and the file is left as it was
+                assertTrue( e.getMessage(), e.getMessage().contains( "movies.json already exists" ) );
+            }
+            assertThat( new String( Files.readAllBytes( Paths.get( file ) ), StandardCharsets.UTF_8 ), equalTo( "[{\"title\":\"Up\"}]" ) );
+
+            // And with overwrite the file is replaced
+            assertThat( session.run( export, parameters( "overwrite", true ) ).single().get( "rows" ).asLong(), equalTo( 2L ) );
+        }
+    }
+
+    @Test
+    public void shouldFetchSeveralPropertiesAsColumns() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two people, one without a birth year
+            session.run( "CREATE (:Person {name:'A', born:1970}), (:Person {name:'B'})" );
+
+            // When I fetch both properties at once
+            Map<String,Object> columns = session.run( "MATCH (p:Person) WITH p ORDER BY p.name WITH collect(p) AS people " +
+                    "CALL com.aaman.neo4j.getNodePropsMulti(people, ['name', 'born']) YIELD value RETURN value" )
+                    .single().get( "value" ).asMap();
+
+            // Then I get one list per key, in node order
+            assertThat( columns.get( "name" ), equalTo( Arrays.asList( "A", "B" ) ) );
+            assertThat( columns.get( "born" ), equalTo( Arrays.asList( 1970L, null ) ) );
+        }
+    }
+
+    @Test
+    public void shouldStreamNodePropertiesWithOrWithoutNulls() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given three people, the second without a birth year
+            session.run( "CREATE (:Person {name:'A', born:1970}), (:Person {name:'B'}), (:Person {name:'C', born:1990})" ).consume();
+            String query = "MATCH (p:Person) WITH p ORDER BY p.name WITH collect(p) AS people " +
+                    "CALL com.aaman.neo4j.streamNodeProps(people, 'born', {skipNulls}) YIELD entityId, value " +
+                    "MATCH (p) WHERE id(p) = entityId RETURN p.name AS name, value";
+
+            // When I stream their birth years
+            List<Record> all = session.run( query, parameters( "skipNulls", false ) ).list();
+            List<Record> present = session.run( query, parameters( "skipNulls", true ) ).list();
+
+            // Then every node gets a row in order, with null where the key is missing, unless nulls are skipped
+            assertThat( all.size(), equalTo( 3 ) );
+            assertThat( all.get( 0 ).get( "name" ).asString(), equalTo( "A" ) );
+            assertThat( all.get( 0 ).get( "value" ).asLong(), equalTo( 1970L ) );
+            assertThat( all.get( 1 ).get( "name" ).asString(), equalTo( "B" ) );
+            assertThat( all.get( 1 ).get( "value" ).isNull(), equalTo( true ) );
+            assertThat( all.get( 2 ).get( "value" ).asLong(), equalTo( 1990L ) );
+            assertThat( present.size(), equalTo( 2 ) );
+            assertThat( present.get( 0 ).get( "name" ).asString(), equalTo( "A" ) );
+            assertThat( present.get( 1 ).get( "name" ).asString(), equalTo( "C" ) );
+        }
+    }
+
+    @Test
+    public void shouldStreamRelationshipPropertiesWithOrWithoutNulls() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two roles in a movie, one of them unnamed
+            session.run( "CREATE (m:Movie {title:'Movie'}), (:Person {name:'A'})-[:ACTED_IN {role:'Hero'}]->(m), " +
+                    "(:Person {name:'B'})-[:ACTED_IN]->(m)" ).consume();
+            String query = "MATCH (p:Person)-[r:ACTED_IN]->() WITH r ORDER BY p.name WITH collect(r) AS roles " +
+                    "CALL com.aaman.neo4j.streamRelProps(roles, 'role', {skipNulls}) YIELD entityId, value " +
+                    "MATCH ()-[r]->() WHERE id(r) = entityId RETURN startNode(r).name AS name, value";
+
+            // When I stream the roles
+            List<Record> all = session.run( query, parameters( "skipNulls", false ) ).list();
+            List<Record> present = session.run( query, parameters( "skipNulls", true ) ).list();
+
+            // Then each relationship gets a row by its own id, and the unnamed role only while nulls are kept
+            assertThat( all.size(), equalTo( 2 ) );
+            assertThat( all.get( 0 ).get( "name" ).asString(), equalTo( "A" ) );
+            assertThat( all.get( 0 ).get( "value" ).asString(), equalTo( "Hero" ) );
+            assertThat( all.get( 1 ).get( "name" ).asString(), equalTo( "B" ) );
+            assertThat( all.get( 1 ).get( "value" ).isNull(), equalTo( true ) );
+            assertThat( present.size(), equalTo( 1 ) );
+            assertThat( present.get( 0 ).get( "value" ).asString(), equalTo( "Hero" ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepAnIndexUpToDateAfterCommits() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given the names of users are kept up to date
+            Record entry = session.run( "CALL com.aaman.neo4j.autoIndex('User', ['name'])" ).single();
+            assertThat( entry.get( "label" ).asString(), equalTo( "User" ) );
+            assertThat( entry.get( "properties" ).asList(), equalTo( Arrays.<Object>asList( "name" ) ) );
+
+            // When a user is created
+            long nodeId = session.run( "CREATE (u:User {name:'Alice'}) RETURN id(u)" ).single().get( 0 ).asLong();
+
+            // Then it is found once the background flush ran
+            assertThat( awaitHits( session, "User", "name:Alice", 1 ), equalTo( 1L ) );
+
+            // And when it is renamed in five transactions in a row
+            for ( int i = 1; i <= 5; i++ )
+            {
+                session.run( "MATCH (u) WHERE id(u) = {id} SET u.name = {name}", parameters( "id", nodeId, "name", "Bob" + i ) ).consume();
+            }
+
+            // Then the renames wait as one node and only the last name is found
+            assertThat( session.run( "CALL com.aaman.neo4j.autoIndexList() YIELD pending RETURN pending" ).single().get( 0 ).asLong() <= 1,
+                    equalTo( true ) );
+            assertThat( awaitHits( session, "User", "name:Bob5", 1 ), equalTo( 1L ) );
+            assertThat( hits( session, "User", "name:Bob1" ), equalTo( 0L ) );
+            assertThat( hits( session, "User", "name:Alice" ), equalTo( 0L ) );
+        }
+    }
+
+    @Test
+    public void shouldDropNodesThatLoseTheLabelOrAreDeleted() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given two users kept in the index
+            session.run( "CALL com.aaman.neo4j.autoIndex('User', ['name'])" ).consume();
+            session.run( "CREATE (:User {name:'Dave'}), (:User {name:'Erin'})" ).consume();
+            assertThat( awaitHits( session, "User", "name:Dave", 1 ), equalTo( 1L ) );
+            assertThat( awaitHits( session, "User", "name:Erin", 1 ), equalTo( 1L ) );
+
+            // When one loses the label and the other is deleted
+            session.run( "MATCH (u:User {name:'Dave'}) REMOVE u:User" ).consume();
+            session.run( "MATCH (u:User {name:'Erin'}) DETACH DELETE u" ).consume();
+
+            // Then neither is found any more
+            assertThat( awaitHits( session, "User", "name:Dave", 0 ), equalTo( 0L ) );
+            assertThat( awaitHits( session, "User", "name:Erin", 0 ), equalTo( 0L ) );
+        }
+    }
+
+    @Test
+    public void shouldStopKeepingALabelUpToDateOnceRemoved() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given users and admins were kept up to date, and then users no longer
+            session.run( "CALL com.aaman.neo4j.autoIndex('User', ['name'])" ).consume();
+            session.run( "CALL com.aaman.neo4j.autoIndex('Admin', ['name'])" ).consume();
+            List<Record> left = session.run( "CALL com.aaman.neo4j.autoIndexRemove('User')" ).list();
+            assertThat( left.size(), equalTo( 1 ) );
+            assertThat( left.get( 0 ).get( "label" ).asString(), equalTo( "Admin" ) );
+
+            // When a node with both labels is created
+            session.run( "CREATE (:User:Admin {name:'Frank'})" ).consume();
+
+            // Then after the flush it is only in the admin index
+            assertThat( awaitHits( session, "Admin", "name:Frank", 1 ), equalTo( 1L ) );
+            assertThat( hits( session, "User", "name:Frank" ), equalTo( 0L ) );
+        }
+    }
+
+    @Test
+    public void shouldReindexEveryLabelledNodeAndReportTheJobDone() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given users that were never indexed
+            session.run( "UNWIND range(1, 25) AS i CREATE (:User {name:'Brook' + i})" ).consume();
+
+            // When I rebuild their index on two workers, three nodes per transaction, and wait for it
+            Record started = session.run( "CALL com.aaman.neo4j.reindexLabel('User', ['name'], {parallelism:2, batchSize:3, wait:true})" ).single();
+
+            // Then the job is done with every node, and all of them are found
+            assertThat( started.get( "state" ).asString(), equalTo( "DONE" ) );
+            assertThat( started.get( "total" ).asLong(), equalTo( 25L ) );
+            assertThat( started.get( "done" ).asLong(), equalTo( 25L ) );
+            assertThat( hits( session, "User", "name:Brook*" ), equalTo( 25L ) );
+
+            // And its status says so too, by id and among all jobs
+            long jobId = started.get( "jobId" ).asLong();
+            Record status = session.run( "CALL com.aaman.neo4j.reindexStatus({id})", parameters( "id", jobId ) ).single();
+            assertThat( status.get( "state" ).asString(), equalTo( "DONE" ) );
+            assertThat( status.get( "done" ).asLong(), equalTo( 25L ) );
+            assertThat( status.get( "label" ).asString(), equalTo( "User" ) );
+            assertThat( session.run( "CALL com.aaman.neo4j.reindexStatus() YIELD jobId WHERE jobId = {id} RETURN count(*)",
+                    parameters( "id", jobId ) ).single().get( 0 ).asLong(), equalTo( 1L ) );
+        }
+    }
+
+    @Test
+    public void shouldReportProgressOfARunningReindex() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a reindex of many users, one per transaction, started in the background
+            session.run( "UNWIND range(1, 5000) AS i CREATE (:User {name:'Brook' + i})" ).consume();
+            long jobId = session.run( "CALL com.aaman.neo4j.reindexLabel('User', ['name'], {parallelism:1, batchSize:1})" )
+                    .single().get( "jobId" ).asLong();
+
+            // When I follow it until it has finished
+            Record status = session.run( "CALL com.aaman.neo4j.reindexStatus({id})", parameters( "id", jobId ) ).single();
+            long deadline = System.currentTimeMillis() + 60000;
+            while ( !status.get( "state" ).asString().equals( "DONE" ) && System.currentTimeMillis() < deadline )
+            {
+                // Then the count done never exceeds the total once that is known
+                long total = status.get( "total" ).asLong();
+                assertThat( total < 0 || status.get( "done" ).asLong() <= total, equalTo( true ) );
+                Thread.sleep( 50 );
+                status = session.run( "CALL com.aaman.neo4j.reindexStatus({id})", parameters( "id", jobId ) ).single();
+            }
+
+            // And it ends done with every node and no estimate left
+            assertThat( status.get( "state" ).asString(), equalTo( "DONE" ) );
+            assertThat( status.get( "total" ).asLong(), equalTo( 5000L ) );
+            assertThat( status.get( "done" ).asLong(), equalTo( 5000L ) );
+            assertThat( status.get( "etaMillis" ).isNull(), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void shouldStopACancelledReindex() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given a long reindex, one user per transaction, running in the background
+            session.run( "UNWIND range(1, 20000) AS i CREATE (:User {name:'Brook' + i})" ).consume();
+            long jobId = session.run( "CALL com.aaman.neo4j.reindexLabel('User', ['name'], {parallelism:1, batchSize:1})" )
+                    .single().get( "jobId" ).asLong();
+
+            // When I cancel it
+            Record cancelled = session.run( "CALL com.aaman.neo4j.reindexCancel({id})", parameters( "id", jobId ) ).single();
+            assertThat( cancelled.get( "jobId" ).asLong(), equalTo( jobId ) );
+
+            // Then it stops after the batch in flight and reports that it was cancelled before the end
+            Record status = session.run( "CALL com.aaman.neo4j.reindexStatus({id})", parameters( "id", jobId ) ).single();
+            long deadline = System.currentTimeMillis() + 10000;
+            while ( !status.get( "state" ).asString().equals( "CANCELLED" ) && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 50 );
+                status = session.run( "CALL com.aaman.neo4j.reindexStatus({id})", parameters( "id", jobId ) ).single();
+            }
+            assertThat( status.get( "state" ).asString(), equalTo( "CANCELLED" ) );
+            assertThat( status.get( "done" ).asLong() < 20000, equalTo( true ) );
+
+            // And cancelling a job that doesn't exist returns nothing
+            assertThat( session.run( "CALL com.aaman.neo4j.reindexCancel(-42)" ).list().size(), equalTo( 0 ) );
+        }
+    }
+
+    @Test
+    public void shouldReuseIndexHandlesUntilTheIndexIsDropped() throws Throwable
+    {
+        try(Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.build()
+                .withEncryptionLevel( Config.EncryptionLevel.NONE ).toConfig() );
+            Session session = driver.session() )
+        {
+            // Given an indexed user, searched for once
+            long nodeId = session.run( "CREATE (u:User {name:'Brookreson'}) RETURN id(u)" ).single().get( 0 ).asLong();
+            session.run( "CALL com.aaman.neo4j.index({id}, ['name'])", parameters( "id", nodeId ) ).consume();
+            assertThat( hits( session, "User", "name:Brook*" ), equalTo( 1L ) );
+            Record before = session.run( "CALL com.aaman.neo4j.indexRegistryStats()" ).single();
+
+            // When I search again
+            assertThat( hits( session, "User", "name:Brook*" ), equalTo( 1L ) );
+
+            // Then the cached handle is used
+            Record after = session.run( "CALL com.aaman.neo4j.indexRegistryStats()" ).single();
+            assertThat( after.get( "hits" ).asLong(), equalTo( before.get( "hits" ).asLong() + 1 ) );
+            assertThat( after.get( "misses" ).asLong(), equalTo( before.get( "misses" ).asLong() ) );
+            assertThat( after.get( "indexes" ).asLong(), equalTo( 1L ) );
+
+            // And when the index is dropped
+            Record dropped = session.run( "CALL com.aaman.neo4j.dropIndex('User')" ).single();
+            assertThat( dropped.get( "dropped" ).asBoolean(), equalTo( true ) );
+
+            // Then the handle is forgotten, a search finds nothing instead of using the deleted index
+            assertThat( session.run( "CALL com.aaman.neo4j.indexRegistryStats()" ).single().get( "indexes" ).asLong(), equalTo( 0L ) );
+            assertThat( hits( session, "User", "name:Brook*" ), equalTo( 0L ) );
+            assertThat( session.run( "CALL com.aaman.neo4j.dropIndex('User')" ).single().get( "dropped" ).asBoolean(), equalTo( false ) );
+
+            // And indexing creates the index anew
+            session.run( "CALL com.aaman.neo4j.index({id}, ['name'])", parameters( "id", nodeId ) ).consume();
+            assertThat( hits( session, "User", "name:Brook*" ), equalTo( 1L ) );
+        }
+    }
+
+    private static long hits( Session session, String label, String query )
+    {
+        return session.run( "CALL com.aaman.neo4j.search({label}, {query}) YIELD nodeId RETURN count(*)",
+                parameters( "label", label, "query", query ) ).single().get( 0 ).asLong();
+    }
+
+    // polls until the background flush of the auto-indexer made the expected hits visible
+    private static long awaitHits( Session session, String label, String query, long expected ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        long found = hits( session, label, query );
+        while ( found != expected && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 100 );
+            found = hits( session, label, query );
+        }
+        return found;
+    }
 }